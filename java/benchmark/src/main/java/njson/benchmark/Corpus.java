@@ -0,0 +1,73 @@
+package njson.benchmark;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import njson.Deserializer;
+import njson.Serializer;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * One document of the corpus in ../data, in every format the benchmarks read.
+ * <p>
+ * small, medium and large are orders of 3, 150 and 3000 line items; wide is a flat object of 2000
+ * fields, deep nests 64 levels, numeric is mostly doubles and strings mostly text. Every document
+ * has an integer "id" and a "meta" object with "name", "score" and "active", which the lookup
+ * benchmarks read. The directory is taken from the njson.data system property.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+    static final String SINGLE_KEY = "meta.name";
+
+    @Param({"small", "medium", "large", "wide", "deep", "numeric", "strings"})
+    public String document;
+
+    final Gson gson = new Gson();
+    final ObjectMapper jackson = new ObjectMapper();
+    final ObjectMapper msgpack = new ObjectMapper(new MessagePackFactory());
+
+    String json;
+    byte[] jsonBytes;
+    Map<String, Object> object;
+    byte[] njson;
+    byte[] msgpackBytes;
+
+    Serializer serializer;
+    final Deserializer deserializer = new Deserializer();
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        String dir = System.getProperty("njson.data", "../data");
+        jsonBytes = Files.readAllBytes(Paths.get(dir, document + ".json"));
+        json = new String(jsonBytes, StandardCharsets.UTF_8);
+        object = gson.fromJson(json, Map.class);
+        serializer = new Serializer(Math.max(1024 * 1024, jsonBytes.length * 2));
+        njson = serializer.packJsonObject(object).toBytes();
+        msgpackBytes = msgpack.writeValueAsBytes(object);
+    }
+}
@@ -0,0 +1,65 @@
+package njson.benchmark;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.alibaba.fastjson.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the whole corpus document into maps and lists.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DecodeBenchmark {
+    @Benchmark
+    public Object njson(Corpus corpus) throws Exception {
+        corpus.deserializer.init(corpus.njson);
+        return corpus.deserializer.unpackJsonObject();
+    }
+
+    @Benchmark
+    public Object gson(Corpus corpus) {
+        return corpus.gson.fromJson(corpus.json, Map.class);
+    }
+
+    @Benchmark
+    public Object fastjson(Corpus corpus) {
+        return JSON.parseObject(corpus.jsonBytes, Map.class);
+    }
+
+    @Benchmark
+    public Object jackson(Corpus corpus) throws Exception {
+        return corpus.jackson.readValue(corpus.jsonBytes, Map.class);
+    }
+
+    @Benchmark
+    public Object msgpack(Corpus corpus) throws Exception {
+        return corpus.msgpack.readValue(corpus.msgpackBytes, Map.class);
+    }
+}
@@ -0,0 +1,121 @@
+package njson.benchmark;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.databind.JsonNode;
+import njson.Deserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads one field, and four fields, of the corpus document. njson reads them in place; the other
+ * libraries have to parse the document first, into their tree model where they have one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LookupBenchmark {
+    @Benchmark
+    public String njsonSingle(Corpus corpus) throws Exception {
+        corpus.deserializer.init(corpus.njson);
+        return corpus.deserializer.getString(Corpus.SINGLE_KEY);
+    }
+
+    @Benchmark
+    public void njsonMulti(Corpus corpus, Blackhole bh) throws Exception {
+        Deserializer deser = corpus.deserializer;
+        deser.init(corpus.njson);
+        bh.consume(deser.getLong("id"));
+        bh.consume(deser.getString("meta.name"));
+        bh.consume(deser.getDouble("meta.score"));
+        bh.consume(deser.getBoolean("meta.active"));
+    }
+
+    @Benchmark
+    public Object gsonSingle(Corpus corpus) {
+        Map<?, ?> map = corpus.gson.fromJson(corpus.json, Map.class);
+        return ((Map<?, ?>) map.get("meta")).get("name");
+    }
+
+    @Benchmark
+    public void gsonMulti(Corpus corpus, Blackhole bh) {
+        Map<?, ?> map = corpus.gson.fromJson(corpus.json, Map.class);
+        Map<?, ?> meta = (Map<?, ?>) map.get("meta");
+        bh.consume(map.get("id"));
+        bh.consume(meta.get("name"));
+        bh.consume(meta.get("score"));
+        bh.consume(meta.get("active"));
+    }
+
+    @Benchmark
+    public String fastjsonSingle(Corpus corpus) {
+        return JSON.parseObject(corpus.json).getJSONObject("meta").getString("name");
+    }
+
+    @Benchmark
+    public void fastjsonMulti(Corpus corpus, Blackhole bh) {
+        JSONObject object = JSON.parseObject(corpus.json);
+        JSONObject meta = object.getJSONObject("meta");
+        bh.consume(object.getLongValue("id"));
+        bh.consume(meta.getString("name"));
+        bh.consume(meta.getDoubleValue("score"));
+        bh.consume(meta.getBooleanValue("active"));
+    }
+
+    @Benchmark
+    public String jacksonSingle(Corpus corpus) throws Exception {
+        return corpus.jackson.readTree(corpus.jsonBytes).path("meta").path("name").asText();
+    }
+
+    @Benchmark
+    public void jacksonMulti(Corpus corpus, Blackhole bh) throws Exception {
+        JsonNode node = corpus.jackson.readTree(corpus.jsonBytes);
+        JsonNode meta = node.path("meta");
+        bh.consume(node.path("id").asLong());
+        bh.consume(meta.path("name").asText());
+        bh.consume(meta.path("score").asDouble());
+        bh.consume(meta.path("active").asBoolean());
+    }
+
+    @Benchmark
+    public String msgpackSingle(Corpus corpus) throws Exception {
+        return corpus.msgpack.readTree(corpus.msgpackBytes).path("meta").path("name").asText();
+    }
+
+    @Benchmark
+    public void msgpackMulti(Corpus corpus, Blackhole bh) throws Exception {
+        JsonNode node = corpus.msgpack.readTree(corpus.msgpackBytes);
+        JsonNode meta = node.path("meta");
+        bh.consume(node.path("id").asLong());
+        bh.consume(meta.path("name").asText());
+        bh.consume(meta.path("score").asDouble());
+        bh.consume(meta.path("active").asBoolean());
+    }
+}
@@ -0,0 +1,64 @@
+package njson.benchmark;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.alibaba.fastjson.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs the corpus document from its object tree into bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerializeBenchmark {
+    @Benchmark
+    public byte[] njson(Corpus corpus) throws Exception {
+        corpus.serializer.init();
+        return corpus.serializer.packJsonObject(corpus.object).toBytes();
+    }
+
+    @Benchmark
+    public String gson(Corpus corpus) {
+        return corpus.gson.toJson(corpus.object);
+    }
+
+    @Benchmark
+    public byte[] fastjson(Corpus corpus) {
+        return JSON.toJSONBytes(corpus.object);
+    }
+
+    @Benchmark
+    public byte[] jackson(Corpus corpus) throws Exception {
+        return corpus.jackson.writeValueAsBytes(corpus.object);
+    }
+
+    @Benchmark
+    public byte[] msgpack(Corpus corpus) throws Exception {
+        return corpus.msgpack.writeValueAsBytes(corpus.object);
+    }
+}
@@ -3,6 +3,12 @@ package njson;
 import java.io.Serializable;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 
 /**
  * Copyright 2017 njson authors
@@ -527,6 +533,14 @@ public final class BytesBuffer implements Serializable {
         return offset;
     }
 
+    public final int end() {
+        return end;
+    }
+
+    final byte[] array() {                              // package-private
+        return bs;
+    }
+
     public final boolean bigEndian() {
         return bigEndian;
     }
@@ -573,6 +587,74 @@ public final class BytesBuffer implements Serializable {
         put(src, 0, src.length);
     }
 
+    // -- bulk get/put of primitive arrays --
+
+    private ByteBuffer view(int pos, int length, boolean bigEndian) {
+        if (pos < offset || pos + length > end)
+            throw new BufferUnderflowException();
+        return ByteBuffer.wrap(bs, pos, length).slice()
+                .order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void putInts(int[] src, int offset, int length) {
+        checkBounds(offset, length, src.length);
+        view(nextPutIndex(length * 4), length * 4, bigEndian).asIntBuffer().put(src, offset, length);
+    }
+
+    public void putLongs(long[] src, int offset, int length) {
+        checkBounds(offset, length, src.length);
+        view(nextPutIndex(length * 8), length * 8, bigEndian).asLongBuffer().put(src, offset, length);
+    }
+
+    public void putFloats(float[] src, int offset, int length) {
+        checkBounds(offset, length, src.length);
+        view(nextPutIndex(length * 4), length * 4, bigEndian).asFloatBuffer().put(src, offset, length);
+    }
+
+    public void putDoubles(double[] src, int offset, int length) {
+        checkBounds(offset, length, src.length);
+        view(nextPutIndex(length * 8), length * 8, bigEndian).asDoubleBuffer().put(src, offset, length);
+    }
+
+    public void getInts(int pos, boolean bigEndian, int[] dst, int offset, int length) {
+        checkBounds(offset, length, dst.length);
+        view(pos, length * 4, bigEndian).asIntBuffer().get(dst, offset, length);
+    }
+
+    public void getLongs(int pos, boolean bigEndian, long[] dst, int offset, int length) {
+        checkBounds(offset, length, dst.length);
+        view(pos, length * 8, bigEndian).asLongBuffer().get(dst, offset, length);
+    }
+
+    public void getFloats(int pos, boolean bigEndian, float[] dst, int offset, int length) {
+        checkBounds(offset, length, dst.length);
+        view(pos, length * 4, bigEndian).asFloatBuffer().get(dst, offset, length);
+    }
+
+    public void getDoubles(int pos, boolean bigEndian, double[] dst, int offset, int length) {
+        checkBounds(offset, length, dst.length);
+        view(pos, length * 8, bigEndian).asDoubleBuffer().get(dst, offset, length);
+    }
+
+    /**
+     * Returns a read-only view of length ints starting at pos, sharing the underlying bytes.
+     */
+    public IntBuffer asIntBuffer(int pos, int length, boolean bigEndian) {
+        return view(pos, length * 4, bigEndian).asIntBuffer().asReadOnlyBuffer();
+    }
+
+    public LongBuffer asLongBuffer(int pos, int length, boolean bigEndian) {
+        return view(pos, length * 8, bigEndian).asLongBuffer().asReadOnlyBuffer();
+    }
+
+    public FloatBuffer asFloatBuffer(int pos, int length, boolean bigEndian) {
+        return view(pos, length * 4, bigEndian).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    public DoubleBuffer asDoubleBuffer(int pos, int length, boolean bigEndian) {
+        return view(pos, length * 8, bigEndian).asDoubleBuffer().asReadOnlyBuffer();
+    }
+
     public byte[] toBytes() {
         byte[] bytes = new byte[position - offset];
         System.arraycopy(bs, offset, bytes, 0, position - offset);
@@ -0,0 +1,42 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * Orders byte arrays lexicographically as unsigned bytes, which for UTF-8 strings is code point
+ * order.
+ */
+public final class BytesComparator implements Comparator<byte[]>, Serializable {
+    @Override
+    public int compare(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    public static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int n = Math.min(aLength, bLength);
+        for (int i = 0; i < n; i++) {
+            int c = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return aLength - bLength;
+    }
+}
@@ -20,6 +20,10 @@ package njson;
 
 public final class Code {
     public static final byte SER_VERSION = (byte) 0x01;
+    /**
+     * version of documents whose header is followed by a {@link KeyFilter}
+     */
+    public static final byte SER_VERSION_KEY_FILTER = (byte) 0x02;
     public static final int HEADER_LENGTH = 2;
     public static final byte BIGENDIAN_MASK = (byte) 0x01;
 
@@ -69,6 +73,16 @@ public final class Code {
 
     public static final byte NEGFIXINT_PREFIX = (byte) 0xe0;
 
+    // predefined extension types, negative types are reserved by the format
+    public static final byte EXT_TIMESTAMP = (byte) -1;
+    public static final byte EXT_DECIMAL = (byte) -2;
+    public static final byte EXT_UUID = (byte) -3;
+    // packed arrays: payload is a byte-order flag followed by fixed-width elements
+    public static final byte EXT_INT32_ARRAY = (byte) -16;
+    public static final byte EXT_INT64_ARRAY = (byte) -17;
+    public static final byte EXT_FLOAT32_ARRAY = (byte) -18;
+    public static final byte EXT_FLOAT64_ARRAY = (byte) -19;
+
     public static final boolean isFixInt(byte b) {
         int v = b & 0xFF;
         return v <= 0x7f || v >= 0xe0;
@@ -0,0 +1,126 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Per-path columns filled by {@link ColumnExtractor} from a batch of documents, one row per document.
+ * <p>
+ * Long and double columns are primitive arrays. String columns hold the offset and length of each
+ * string's UTF-8 bytes within its source document array. Every column has a null bitmap (bit
+ * {@code row % 64} of word {@code row / 64}) marking rows where the path is missing, nil or of
+ * another type; the value of a null row is 0.
+ */
+public final class ColumnBatch {
+    private final int size;
+    private final List<Slice> sources;
+    private final ColumnExtractor.Kind[] kinds;
+    private final Object[] values;
+    private final int[][] lengths;
+    private final long[][] nulls;
+
+    ColumnBatch(List<Slice> sources, ColumnExtractor.Kind[] kinds) {
+        this.size = sources.size();
+        this.sources = sources;
+        this.kinds = kinds;
+        values = new Object[kinds.length];
+        lengths = new int[kinds.length][];
+        nulls = new long[kinds.length][(size + 63) >>> 6];
+        for (int c = 0; c < kinds.length; c++) {
+            switch (kinds[c]) {
+                case LONG:
+                    values[c] = new long[size];
+                    break;
+                case DOUBLE:
+                    values[c] = new double[size];
+                    break;
+                default:
+                    values[c] = new int[size];
+                    lengths[c] = new int[size];
+                    break;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return kinds.length;
+    }
+
+    public long[] getLongs(int column) {
+        return (long[]) values[checkKind(column, ColumnExtractor.Kind.LONG)];
+    }
+
+    public double[] getDoubles(int column) {
+        return (double[]) values[checkKind(column, ColumnExtractor.Kind.DOUBLE)];
+    }
+
+    /**
+     * Returns the offsets of the string bytes of the column within {@link #getSource(int)} of each row.
+     */
+    public int[] getStringOffsets(int column) {
+        return (int[]) values[checkKind(column, ColumnExtractor.Kind.STRING)];
+    }
+
+    public int[] getStringLengths(int column) {
+        return lengths[checkKind(column, ColumnExtractor.Kind.STRING)];
+    }
+
+    public String getString(int column, int row) {
+        if (isNull(column, row)) {
+            return null;
+        }
+        return new String(getSource(row), getStringOffsets(column)[row], getStringLengths(column)[row],
+                StandardCharsets.UTF_8);
+    }
+
+    public byte[] getSource(int row) {
+        return sources.get(row).array();
+    }
+
+    public long[] getNulls(int column) {
+        return nulls[column];
+    }
+
+    public boolean isNull(int column, int row) {
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    ColumnExtractor.Kind getKind(int column) {
+        return kinds[column];
+    }
+
+    Object getValues(int column) {
+        return values[column];
+    }
+
+    void setNull(int column, int row) {
+        nulls[column][row >>> 6] |= 1L << row;
+    }
+
+    private int checkKind(int column, ColumnExtractor.Kind kind) {
+        if (kinds[column] != kind) {
+            throw new IllegalArgumentException(String.format("column %d is %s", column, kinds[column]));
+        }
+        return column;
+    }
+}
@@ -0,0 +1,382 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The entries of one column in one row group of a columnar file.
+ * <p>
+ * Every entry has a repetition level, the array level at which it repeats (0 starts a new row),
+ * and a definition level, the number of steps of the column path that are present. Entries whose
+ * definition level is the maximum carry a value, in order: the encoded njson value for scalars,
+ * or an empty map or array for containers, whose content lives in the descendant columns.
+ * <p>
+ * Levels are run-length encoded. Values are dictionary encoded when that is smaller, otherwise
+ * stored as they appear in the documents.
+ */
+public final class ColumnChunk {
+    static final byte PLAIN = 0;
+    static final byte DICTIONARY = 1;
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+    private static final int INIT_SIZE = 16;
+
+    private final String path;
+    private final int maxRep;
+    private final int maxDef;
+
+    private int size;
+    private int[] reps;
+    private int[] defs;
+    private int valueCount;
+
+    /**
+     * Distinct values when indexes is not null, otherwise the values in order.
+     */
+    private byte[] data;
+    private int dataLength;
+    private int[] ends;
+    private int entryCount;
+    private int[] indexes;
+    private Map<RawKey, Integer> dictionary;
+
+    /**
+     * read position of {@link ColumnarReader} while assembling documents
+     */
+    private int next;
+    private int nextValue;
+    private Deserializer deser;
+
+    ColumnChunk(String path, int maxRep, int maxDef) {
+        this.path = path;
+        this.maxRep = maxRep;
+        this.maxDef = maxDef;
+        reps = new int[INIT_SIZE];
+        defs = new int[INIT_SIZE];
+        data = new byte[INIT_SIZE];
+        ends = new int[INIT_SIZE];
+        indexes = new int[INIT_SIZE];
+        dictionary = new HashMap<>();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getMaxRepetitionLevel() {
+        return maxRep;
+    }
+
+    public int getMaxDefinitionLevel() {
+        return maxDef;
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getRepetitionLevel(int entry) {
+        return reps[entry];
+    }
+
+    public int getDefinitionLevel(int entry) {
+        return defs[entry];
+    }
+
+    public boolean isDefined(int entry) {
+        return defs[entry] == maxDef;
+    }
+
+    /**
+     * Returns the number of defined entries, which are numbered in order by the value getters.
+     */
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    public boolean isDictionaryEncoded() {
+        return indexes != null;
+    }
+
+    public Slice getRawValue(int value) {
+        int entry = entry(value);
+        int start = entry == 0 ? 0 : ends[entry - 1];
+        return new Slice(data, start, ends[entry] - start);
+    }
+
+    public Object getValue(int value) throws Exception {
+        int entry = entry(value);
+        if (deser == null) {
+            deser = new Deserializer();
+        }
+        deser.initRaw(data, 0, dataLength, true);
+        return deser.unpackValue(entry == 0 ? 0 : ends[entry - 1]);
+    }
+
+    private int entry(int value) {
+        if (value >= valueCount) {
+            throw new IndexOutOfBoundsException(String.format("value %d of %d", value, valueCount));
+        }
+        return indexes == null ? value : indexes[value];
+    }
+
+    void add(int rep, int def) {
+        if (size == reps.length) {
+            reps = Arrays.copyOf(reps, size * 2);
+            defs = Arrays.copyOf(defs, size * 2);
+        }
+        reps[size] = rep;
+        defs[size] = def;
+        size++;
+    }
+
+    void add(int rep, byte[] src, int offset, int length) {
+        add(rep, maxDef);
+        if (dictionary != null) {
+            if (valueCount == indexes.length) {
+                indexes = Arrays.copyOf(indexes, valueCount * 2);
+            }
+            Integer index = dictionary.get(new RawKey(src, offset, length));
+            if (index != null) {
+                indexes[valueCount++] = index;
+                return;
+            }
+            if (entryCount == MAX_DICTIONARY_SIZE) {
+                expandDictionary();
+            }
+        }
+        if (dictionary != null) {
+            indexes[valueCount++] = entryCount;
+        } else {
+            valueCount++;
+        }
+        int start = dataLength;
+        appendEntry(src, offset, length);
+        if (dictionary != null) {
+            dictionary.put(new RawKey(data, start, length), entryCount - 1);
+        }
+    }
+
+    private void appendEntry(byte[] src, int offset, int length) {
+        if (dataLength + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+        }
+        System.arraycopy(src, offset, data, dataLength, length);
+        dataLength += length;
+        if (entryCount == ends.length) {
+            ends = Arrays.copyOf(ends, entryCount * 2);
+        }
+        ends[entryCount++] = dataLength;
+    }
+
+    /**
+     * Gives up on the dictionary, storing every value in order.
+     */
+    private void expandDictionary() {
+        byte[] distinct = data;
+        int[] distinctEnds = ends;
+        data = new byte[Math.max(INIT_SIZE, dataLength * 2)];
+        ends = new int[Math.max(INIT_SIZE, valueCount * 2)];
+        dataLength = 0;
+        entryCount = 0;
+        for (int i = 0; i < valueCount; i++) {
+            int entry = indexes[i];
+            int start = entry == 0 ? 0 : distinctEnds[entry - 1];
+            appendEntry(distinct, start, distinctEnds[entry] - start);
+        }
+        indexes = null;
+        dictionary = null;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        if (maxRep > 0) {
+            writeRuns(out, reps, size);
+        }
+        if (maxDef > 0) {
+            writeRuns(out, defs, size);
+        }
+        out.writeInt(valueCount);
+
+        long plainLength = dataLength;
+        if (indexes != null) {
+            plainLength = 0;
+            for (int i = 0; i < valueCount; i++) {
+                int entry = indexes[i];
+                plainLength += ends[entry] - (entry == 0 ? 0 : ends[entry - 1]);
+            }
+            // a one byte index per value is the worst case for short runs of small dictionaries
+            if (dataLength + valueCount < plainLength) {
+                out.writeByte(DICTIONARY);
+                out.writeInt(entryCount);
+                out.writeInt(dataLength);
+                out.write(data, 0, dataLength);
+                writeRuns(out, indexes, valueCount);
+                return;
+            }
+        }
+
+        out.writeByte(PLAIN);
+        out.writeInt((int) plainLength);
+        for (int i = 0; i < valueCount; i++) {
+            int entry = indexes == null ? i : indexes[i];
+            int start = entry == 0 ? 0 : ends[entry - 1];
+            out.write(data, start, ends[entry] - start);
+        }
+    }
+
+    static ColumnChunk read(String path, int maxRep, int maxDef, byte[] bs) throws Exception {
+        ColumnChunk chunk = new ColumnChunk(path, maxRep, maxDef);
+        ByteBuffer in = ByteBuffer.wrap(bs);
+        int size = in.getInt();
+        chunk.size = size;
+        chunk.reps = maxRep > 0 ? readRuns(in, size) : new int[size];
+        chunk.defs = maxDef > 0 ? readRuns(in, size) : new int[size];
+        chunk.valueCount = in.getInt();
+        chunk.dictionary = null;
+
+        byte encoding = in.get();
+        int count = encoding == DICTIONARY ? in.getInt() : chunk.valueCount;
+        int length = in.getInt();
+        chunk.data = Arrays.copyOfRange(bs, in.position(), in.position() + length);
+        chunk.dataLength = length;
+        in.position(in.position() + length);
+        chunk.entryCount = count;
+        chunk.ends = new int[count];
+        Deserializer deser = new Deserializer();
+        deser.initRaw(chunk.data, 0, length, true);
+        for (int i = 0; i < count; i++) {
+            deser.skipValue();
+            chunk.ends[i] = deser.buffer.position();
+        }
+
+        switch (encoding) {
+            case PLAIN:
+                chunk.indexes = null;
+                break;
+            case DICTIONARY:
+                chunk.indexes = readRuns(in, chunk.valueCount);
+                break;
+            default:
+                throw new FormatException(String.format("column encoding %d unsupport", encoding));
+        }
+        return chunk;
+    }
+
+    private static void writeRuns(DataOutputStream out, int[] values, int n) throws IOException {
+        int i = 0;
+        while (i < n) {
+            int v = values[i];
+            int run = 1;
+            while (i + run < n && values[i + run] == v) {
+                run++;
+            }
+            writeVarint(out, run);
+            writeVarint(out, v);
+            i += run;
+        }
+    }
+
+    private static int[] readRuns(ByteBuffer in, int n) {
+        int[] values = new int[n];
+        int i = 0;
+        while (i < n) {
+            int run = readVarint(in);
+            Arrays.fill(values, i, i + run, readVarint(in));
+            i += run;
+        }
+        return values;
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    boolean hasNext() {
+        return next < size;
+    }
+
+    boolean peekDefined() {
+        return defs[next] == maxDef;
+    }
+
+    int peekRepetitionLevel() {
+        return reps[next];
+    }
+
+    /**
+     * Consumes the next entry, returning its value number or -1 if it is not defined.
+     */
+    int nextEntry() {
+        return defs[next++] == maxDef ? nextValue++ : -1;
+    }
+
+    private static final class RawKey {
+        private final byte[] bs;
+        private final int offset;
+        private final int length;
+        private final int hash;
+
+        RawKey(byte[] bs, int offset, int length) {
+            this.bs = bs;
+            this.offset = offset;
+            this.length = length;
+            int h = 1;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + bs[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RawKey)) {
+                return false;
+            }
+            RawKey k = (RawKey) o;
+            return length == k.length && Utils.bytesEquals(bs, offset, offset + length, k.bs, k.offset, k.offset + length);
+        }
+    }
+}
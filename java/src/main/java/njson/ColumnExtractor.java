@@ -0,0 +1,172 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a fixed set of paths from every document of a batch into a {@link ColumnBatch}.
+ * <pre>
+ *     ColumnExtractor extractor = new ColumnExtractor();
+ *     int id = extractor.addLongColumn("user.id");
+ *     int latency = extractor.addDoubleColumn("latency");
+ *     ColumnBatch batch = extractor.extract(docs);
+ *     long[] ids = batch.getLongs(id);
+ * </pre>
+ * Each document is visited once: all paths are located in one pass, then the values are decoded
+ * straight into the column arrays. Columns must be added before the first extraction; after that
+ * the extractor is immutable and may be shared between threads.
+ */
+public final class ColumnExtractor {
+    private static final int CHUNK_SIZE = 1024;
+
+    enum Kind {
+        LONG, DOUBLE, STRING
+    }
+
+    private final List<String> paths = new ArrayList<>();
+    private final List<Kind> kinds = new ArrayList<>();
+    private volatile FieldMask mask;
+
+    public int addLongColumn(String path) {
+        return addColumn(path, Kind.LONG);
+    }
+
+    public int addDoubleColumn(String path) {
+        return addColumn(path, Kind.DOUBLE);
+    }
+
+    /**
+     * Adds a column of string offsets into the source documents. Rows whose value is not a string
+     * are null.
+     */
+    public int addStringColumn(String path) {
+        return addColumn(path, Kind.STRING);
+    }
+
+    private synchronized int addColumn(String path, Kind kind) {
+        if (mask != null) {
+            throw new IllegalStateException("columns cannot be added after extraction");
+        }
+        paths.add(path);
+        kinds.add(kind);
+        return paths.size() - 1;
+    }
+
+    private FieldMask mask() {
+        FieldMask m = mask;
+        if (m == null) {
+            synchronized (this) {
+                if (mask == null) {
+                    mask = FieldMask.of(paths);
+                }
+                m = mask;
+            }
+        }
+        return m;
+    }
+
+    public ColumnBatch extract(List<Slice> docs) throws Exception {
+        ColumnBatch batch = new ColumnBatch(docs, kinds.toArray(new Kind[0]));
+        extract(mask(), docs, batch, 0, docs.size());
+        return batch;
+    }
+
+    /**
+     * Extracts on the given pool, in chunks of rows that each use their own Deserializer.
+     */
+    public ColumnBatch extract(List<Slice> docs, ForkJoinPool pool) throws Exception {
+        ColumnBatch batch = new ColumnBatch(docs, kinds.toArray(new Kind[0]));
+        pool.invoke(new ExtractTask(mask(), docs, batch, 0, docs.size()));
+        return batch;
+    }
+
+    private static void extract(FieldMask mask, List<Slice> docs, ColumnBatch batch, int from, int to) throws Exception {
+        Deserializer deser = new Deserializer();
+        int[] positions = new int[mask.size()];
+        for (int row = from; row < to; row++) {
+            deser.init(docs.get(row));
+            deser.locate(mask, positions);
+            for (int c = 0; c < positions.length; c++) {
+                fill(deser, batch, c, row, positions[c]);
+            }
+        }
+    }
+
+    private static void fill(Deserializer deser, ColumnBatch batch, int column, int row, int pos) throws Exception {
+        ValueType type = pos < 0 ? ValueType.NIL : Format.valueOf(deser.buffer.get(pos)).getValueType();
+        switch (batch.getKind(column)) {
+            case LONG:
+                if (type.isNumberType()) {
+                    ((long[]) batch.getValues(column))[row] = deser.getLong(pos);
+                    return;
+                }
+                break;
+            case DOUBLE:
+                if (type.isNumberType()) {
+                    ((double[]) batch.getValues(column))[row] = deser.getDouble(pos);
+                    return;
+                }
+                break;
+            default:
+                if (type.isStringType()) {
+                    long span = deser.stringSpan(pos);
+                    batch.getStringOffsets(column)[row] = (int) (span >>> 32);
+                    batch.getStringLengths(column)[row] = (int) span;
+                    return;
+                }
+                break;
+        }
+        batch.setNull(column, row);
+    }
+
+    private static final class ExtractTask extends RecursiveAction {
+        private final FieldMask mask;
+        private final List<Slice> docs;
+        private final ColumnBatch batch;
+        private final int from;
+        private final int to;
+
+        ExtractTask(FieldMask mask, List<Slice> docs, ColumnBatch batch, int from, int to) {
+            this.mask = mask;
+            this.docs = docs;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                try {
+                    extract(mask, docs, batch, from, to);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new FormatException(e);
+                }
+                return;
+            }
+            // split on a multiple of 64 rows so that tasks never share a null bitmap word
+            int mid = from + ((to - from) / 2 & ~63);
+            invokeAll(new ExtractTask(mask, docs, batch, from, mid), new ExtractTask(mask, docs, batch, mid, to));
+        }
+    }
+}
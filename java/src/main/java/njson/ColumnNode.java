@@ -0,0 +1,121 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A node of the schema of a columnar row group: the root value, a map key below its parent, or the
+ * elements of an array (key null). Every node owns one column.
+ * <p>
+ * The maximum definition level of a node is its depth, the maximum repetition level is the number
+ * of array steps on its path.
+ */
+final class ColumnNode {
+    final ColumnNode parent;
+    final String key;
+    final int keyLength;
+    final int depth;
+    final int maxRep;
+    final Map<String, ColumnNode> children = new LinkedHashMap<>();
+    ColumnNode element;
+    ColumnChunk chunk;
+    long offset;
+    int length;
+    /**
+     * position of this node's value in the current map while shredding, -1 if the key is missing
+     */
+    int valuePos;
+
+    ColumnNode() {
+        this(null, null);
+    }
+
+    private ColumnNode(ColumnNode parent, String key) {
+        this.parent = parent;
+        this.key = key;
+        this.keyLength = key == null ? 0 : key.getBytes(StandardCharsets.UTF_8).length;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        this.maxRep = parent == null ? 0 : key == null ? parent.maxRep + 1 : parent.maxRep;
+    }
+
+    ColumnNode child(String key) {
+        ColumnNode node = children.get(key);
+        if (node == null) {
+            node = new ColumnNode(this, key);
+            children.put(key, node);
+        }
+        return node;
+    }
+
+    ColumnNode element() {
+        if (element == null) {
+            element = new ColumnNode(this, null);
+        }
+        return element;
+    }
+
+    /**
+     * Returns the node at the given path segments, a null segment being the array elements.
+     */
+    ColumnNode descendant(List<Object> segments) {
+        ColumnNode node = this;
+        for (Object segment : segments) {
+            node = segment == null ? node.element() : node.child((String) segment);
+        }
+        return node;
+    }
+
+    List<Object> segments() {
+        List<Object> segments = parent == null ? new ArrayList<>() : parent.segments();
+        if (parent != null) {
+            segments.add(key);
+        }
+        return segments;
+    }
+
+    /**
+     * Dotted path of this node, "[]" standing for the elements of an array: "items[].price".
+     */
+    String path() {
+        if (parent == null) {
+            return "";
+        }
+        String prefix = parent.path();
+        if (key == null) {
+            return prefix + "[]";
+        }
+        return prefix.isEmpty() ? key : prefix + "." + key;
+    }
+
+    /**
+     * Adds this node and its descendants to nodes in pre-order.
+     */
+    void collect(List<ColumnNode> nodes) {
+        nodes.add(this);
+        for (ColumnNode child : children.values()) {
+            child.collect(nodes);
+        }
+        if (element != null) {
+            element.collect(nodes);
+        }
+    }
+}
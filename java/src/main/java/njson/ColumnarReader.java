@@ -0,0 +1,287 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads files written by {@link ColumnarWriter}: single columns without touching the others, or
+ * whole documents reassembled from all columns of a row group.
+ * <pre>
+ *     try (ColumnarReader reader = new ColumnarReader(path)) {
+ *         List&lt;Object&gt; prices = reader.readValues("items[].price");
+ *         List&lt;byte[]&gt; docs = reader.readRowGroup(0);
+ *     }
+ * </pre>
+ * Paths are dotted keys with "[]" for the elements of an array, the root value being "". A column
+ * whose keys contain '.' or "[]" is read by its list of keys instead, see
+ * {@link #readColumn(int, List)}.
+ */
+public final class ColumnarReader implements Closeable {
+    private static final int TRAILER_LENGTH = 4 + 4;
+
+    private final FileChannel channel;
+    private final long rowCount;
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+
+    public ColumnarReader(Path path) throws Exception {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < ColumnarWriter.MAGIC.length + 1 + TRAILER_LENGTH) {
+                throw new FormatException("not a columnar file");
+            }
+            byte[] head = read(0, ColumnarWriter.MAGIC.length + 1);
+            ByteBuffer trailer = ByteBuffer.wrap(read(size - TRAILER_LENGTH, TRAILER_LENGTH));
+            int footerLength = trailer.getInt();
+            byte[] magic = new byte[ColumnarWriter.MAGIC.length];
+            trailer.get(magic);
+            if (!Arrays.equals(magic, ColumnarWriter.MAGIC)
+                    || !Utils.bytesEquals(head, 0, magic.length, magic, 0, magic.length)) {
+                throw new FormatException("not a columnar file");
+            }
+            if (head[magic.length] != Code.SER_VERSION) {
+                throw new FormatException(String.format("columnar version %d unsupport", head[magic.length]));
+            }
+
+            Deserializer deser = new Deserializer();
+            deser.init(read(size - TRAILER_LENGTH - footerLength, footerLength));
+            Map<?, ?> footer = (Map<?, ?>) deser.unpackJsonObject();
+            rowCount = ((Number) footer.get("rowCount")).longValue();
+            for (Object group : (List<?>) footer.get("rowGroups")) {
+                rowGroups.add(new RowGroup((Map<?, ?>) group));
+            }
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getRowGroupCount() {
+        return rowGroups.size();
+    }
+
+    public int getRowCount(int rowGroup) {
+        return rowGroups.get(rowGroup).rowCount;
+    }
+
+    public List<String> getColumnPaths(int rowGroup) {
+        List<String> paths = new ArrayList<>();
+        for (ColumnNode node : rowGroups.get(rowGroup).columns.values()) {
+            paths.add(node.path());
+        }
+        return paths;
+    }
+
+    /**
+     * Reads one column of a row group.
+     *
+     * @return the column, or null if no document of the row group has the path
+     */
+    public ColumnChunk readColumn(int rowGroup, String path) throws Exception {
+        return readColumn(rowGroup, segments(path));
+    }
+
+    /**
+     * Reads the column of a row group at the given keys, a null key standing for the elements of an
+     * array. Unlike a dotted path this reaches keys that contain '.' or "[]".
+     *
+     * @return the column, or null if no document of the row group has the path
+     */
+    public ColumnChunk readColumn(int rowGroup, List<String> keys) throws Exception {
+        ColumnNode node = rowGroups.get(rowGroup).columns.get(keys);
+        return node == null ? null : readChunk(node);
+    }
+
+    /**
+     * Splits a dotted path into its keys, "[]" becoming null: "items[].price" is [items, null, price].
+     */
+    static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        if (path.isEmpty()) {
+            return segments;
+        }
+        for (String part : path.split("\\.", -1)) {
+            int end = part.length();
+            while (end >= 2 && part.startsWith("[]", end - 2)) {
+                end -= 2;
+            }
+            if (end > 0) {
+                segments.add(part.substring(0, end));
+            }
+            for (int i = end; i < part.length(); i += 2) {
+                segments.add(null);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the defined values of one column across all row groups. Map and array columns hold an
+     * empty map or list per value.
+     */
+    public List<Object> readValues(String path) throws Exception {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < rowGroups.size(); i++) {
+            ColumnChunk chunk = readColumn(i, path);
+            if (chunk == null) {
+                continue;
+            }
+            for (int j = 0; j < chunk.getValueCount(); j++) {
+                values.add(chunk.getValue(j));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reassembles the documents of a row group as njson bytes.
+     */
+    public List<byte[]> readRowGroup(int rowGroup) throws Exception {
+        RowGroup group = rowGroups.get(rowGroup);
+        for (ColumnNode node : group.columns.values()) {
+            node.chunk = readChunk(node);
+        }
+        List<byte[]> docs = new ArrayList<>(group.rowCount);
+        Serializer ser = new Serializer(group.maxRowLength);
+        for (int i = 0; i < group.rowCount; i++) {
+            ser.init();
+            ser.packHeader();
+            assemble(group.root, ser);
+            docs.add(ser.toBytes());
+        }
+        for (ColumnNode node : group.columns.values()) {
+            node.chunk = null;
+        }
+        return docs;
+    }
+
+    private void assemble(ColumnNode node, Serializer ser) throws Exception {
+        ColumnChunk chunk = node.chunk;
+        Slice raw = chunk.getRawValue(chunk.nextEntry());
+        byte marker = raw.length() == 1 ? raw.array()[raw.offset()] : Code.NIL;
+        if (marker == Code.FIXMAP_PREFIX) {
+            int position = ser.reserveMapHeader();
+            for (ColumnNode child : node.children.values()) {
+                if (child.chunk.peekDefined()) {
+                    ser.packString(child.key);
+                    assemble(child, ser);
+                } else {
+                    skip(child);
+                }
+            }
+            if (node.element != null) {
+                skip(node.element);
+            }
+            ser.closeContainer(position);
+        } else if (marker == Code.FIXARRAY_PREFIX) {
+            int position = ser.reserveArrayHeader();
+            for (ColumnNode child : node.children.values()) {
+                skip(child);
+            }
+            ColumnNode element = node.element;
+            if (element != null) {
+                if (element.chunk.peekDefined()) {
+                    do {
+                        assemble(element, ser);
+                    } while (element.chunk.hasNext() && element.chunk.peekRepetitionLevel() == element.maxRep);
+                } else {
+                    skip(element);
+                }
+            }
+            ser.closeContainer(position);
+        } else {
+            ser.writePayload(raw.array(), raw.offset(), raw.length());
+            for (ColumnNode child : node.children.values()) {
+                skip(child);
+            }
+            if (node.element != null) {
+                skip(node.element);
+            }
+        }
+    }
+
+    /**
+     * Consumes the undefined entry of node and its descendants.
+     */
+    private static void skip(ColumnNode node) {
+        node.chunk.nextEntry();
+        for (ColumnNode child : node.children.values()) {
+            skip(child);
+        }
+        if (node.element != null) {
+            skip(node.element);
+        }
+    }
+
+    private ColumnChunk readChunk(ColumnNode node) throws Exception {
+        return ColumnChunk.read(node.path(), node.maxRep, node.depth, read(node.offset, node.length));
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return dst.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class RowGroup {
+        final int rowCount;
+        final int maxRowLength;
+        final ColumnNode root = new ColumnNode();
+        /**
+         * the columns by their keys, which unlike dotted paths are unique
+         */
+        final Map<List<Object>, ColumnNode> columns = new LinkedHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        RowGroup(Map<?, ?> meta) {
+            rowCount = ((Number) meta.get("rowCount")).intValue();
+            maxRowLength = ((Number) meta.get("maxRowLength")).intValue();
+            for (Object c : (List<?>) meta.get("columns")) {
+                Map<?, ?> column = (Map<?, ?>) c;
+                ColumnNode node = root.descendant((List<Object>) column.get("path"));
+                node.offset = ((Number) column.get("offset")).longValue();
+                node.length = ((Number) column.get("length")).intValue();
+                columns.put(node.segments(), node);
+            }
+        }
+    }
+}
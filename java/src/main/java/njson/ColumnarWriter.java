@@ -0,0 +1,307 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shreds njson documents into a columnar file, one column per path.
+ * <pre>
+ *     try (ColumnarWriter writer = new ColumnarWriter(new FileOutputStream(file))) {
+ *         for (byte[] doc : docs) {
+ *             writer.write(doc);
+ *         }
+ *     }
+ * </pre>
+ * Documents are buffered into row groups. The schema of a row group is the union of the paths of
+ * its documents, so documents do not need to share a structure; every map key and every array
+ * level gets its own column (see {@link ColumnChunk}). Scalar values are kept in their njson
+ * encoding, so documents read back by {@link ColumnarReader} hold the same keys, values and
+ * formats, with map keys in schema order.
+ * <p>
+ * File layout: magic "NJCF", {@link Code#SER_VERSION}, the column chunks of each row group, the
+ * footer as an njson document, its int32 length and the magic again. Only big-endian documents,
+ * as written by {@link Serializer}, are supported.
+ */
+public final class ColumnarWriter implements Closeable {
+    static final byte[] MAGIC = new byte[]{'N', 'J', 'C', 'F'};
+    private static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+    private static final long DEFAULT_ROW_GROUP_BYTES = 64L * 1024 * 1024;
+    private static final byte[] MAP_MARKER = new byte[]{Code.FIXMAP_PREFIX};
+    private static final byte[] ARRAY_MARKER = new byte[]{Code.FIXARRAY_PREFIX};
+
+    private final DataOutputStream out;
+    private final Deserializer deser = new Deserializer();
+    private final List<byte[]> rows = new ArrayList<>();
+    private final List<Object> rowGroups = new ArrayList<>();
+    private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+    private long rowGroupBytes = DEFAULT_ROW_GROUP_BYTES;
+    private long bufferedBytes;
+    private long rowCount;
+    private long offset;
+    private boolean closed;
+
+    public ColumnarWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.write(MAGIC);
+        this.out.writeByte(Code.SER_VERSION);
+        offset = MAGIC.length + 1;
+    }
+
+    /**
+     * Sets the maximum number of documents of a row group.
+     */
+    public void setRowGroupSize(int rowGroupSize) {
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    /**
+     * Sets the number of buffered document bytes after which a row group is written.
+     */
+    public void setRowGroupBytes(long rowGroupBytes) {
+        this.rowGroupBytes = rowGroupBytes;
+    }
+
+    public void write(byte[] doc) throws Exception {
+        write(doc, 0, doc.length);
+    }
+
+    public void write(Slice doc) throws Exception {
+        write(doc.array(), doc.offset(), doc.length());
+    }
+
+    public void write(byte[] doc, int offset, int length) throws Exception {
+        deser.init(doc, offset, offset + length);
+        if (!deser.buffer.bigEndian()) {
+            throw new FormatException("little-endian documents unsupport");
+        }
+        rows.add(Arrays.copyOfRange(doc, offset, offset + length));
+        bufferedBytes += length;
+        if (rows.size() >= rowGroupSize || bufferedBytes >= rowGroupBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered documents as a row group.
+     */
+    public void flush() throws Exception {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        ColumnNode root = new ColumnNode();
+        for (byte[] row : rows) {
+            deser.init(row);
+            infer(root);
+        }
+        List<ColumnNode> nodes = new ArrayList<>();
+        root.collect(nodes);
+        for (ColumnNode node : nodes) {
+            node.chunk = new ColumnChunk(node.path(), node.maxRep, node.depth);
+        }
+
+        int maxRowLength = 0;
+        for (byte[] row : rows) {
+            deser.init(row);
+            maxRowLength = Math.max(maxRowLength, Code.HEADER_LENGTH + shred(root, 0));
+        }
+
+        List<Object> columns = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (ColumnNode node : nodes) {
+            bytes.reset();
+            node.chunk.write(new DataOutputStream(bytes));
+            Map<String, Object> column = new LinkedHashMap<>();
+            column.put("path", node.segments());
+            column.put("offset", offset);
+            column.put("length", bytes.size());
+            columns.add(column);
+            bytes.writeTo(out);
+            offset += bytes.size();
+        }
+
+        Map<String, Object> rowGroup = new LinkedHashMap<>();
+        rowGroup.put("rowCount", rows.size());
+        rowGroup.put("maxRowLength", maxRowLength);
+        rowGroup.put("columns", columns);
+        rowGroups.add(rowGroup);
+        rowCount += rows.size();
+        rows.clear();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Adds the paths of the value at the buffer position to node and skips it.
+     */
+    private void infer(ColumnNode node) throws Exception {
+        BytesBuffer buffer = deser.buffer;
+        int len = deser.enterMap();
+        if (len >= 0) {
+            int end = buffer.position() + len;
+            while (buffer.position() < end) {
+                infer(node.child(deser.unpackKey()));
+            }
+            return;
+        }
+        len = deser.enterArray();
+        if (len >= 0) {
+            int end = buffer.position() + len;
+            while (buffer.position() < end) {
+                infer(node.element());
+            }
+            return;
+        }
+        deser.skipValue();
+    }
+
+    /**
+     * Appends the value at the buffer position to the columns of node and its descendants, and
+     * skips it.
+     *
+     * @return the length of the value as {@link ColumnarReader} will encode it
+     */
+    private int shred(ColumnNode node, int rep) throws Exception {
+        BytesBuffer buffer = deser.buffer;
+        int pos = buffer.position();
+        int len = deser.enterMap();
+        if (len >= 0) {
+            node.chunk.add(rep, MAP_MARKER, 0, 1);
+            for (ColumnNode child : node.children.values()) {
+                child.valuePos = -1;
+            }
+            int end = buffer.position() + len;
+            while (buffer.position() < end) {
+                ColumnNode child = node.children.get(deser.unpackKey());
+                child.valuePos = buffer.position();
+                deser.skipValue();
+            }
+
+            int size = 5;
+            for (ColumnNode child : node.children.values()) {
+                if (child.valuePos < 0) {
+                    addNulls(child, rep, node.depth);
+                } else {
+                    buffer.position(child.valuePos);
+                    size += stringHeaderLength(child.keyLength) + child.keyLength + shred(child, rep);
+                }
+            }
+            if (node.element != null) {
+                addNulls(node.element, rep, node.depth);
+            }
+            buffer.position(end);
+            return size;
+        }
+
+        len = deser.enterArray();
+        if (len >= 0) {
+            node.chunk.add(rep, ARRAY_MARKER, 0, 1);
+            for (ColumnNode child : node.children.values()) {
+                addNulls(child, rep, node.depth);
+            }
+            int end = buffer.position() + len;
+            int size = 5;
+            if (buffer.position() == end) {
+                if (node.element != null) {
+                    addNulls(node.element, rep, node.depth);
+                }
+            } else {
+                // the first element continues the enclosing repetition, the next ones repeat this array
+                int elementRep = rep;
+                while (buffer.position() < end) {
+                    size += shred(node.element, elementRep);
+                    elementRep = node.element.maxRep;
+                }
+            }
+            return size;
+        }
+
+        deser.skipValue();
+        node.chunk.add(rep, buffer.array(), pos, buffer.position() - pos);
+        for (ColumnNode child : node.children.values()) {
+            addNulls(child, rep, node.depth);
+        }
+        if (node.element != null) {
+            addNulls(node.element, rep, node.depth);
+        }
+        return buffer.position() - pos;
+    }
+
+    private static void addNulls(ColumnNode node, int rep, int def) {
+        node.chunk.add(rep, def);
+        for (ColumnNode child : node.children.values()) {
+            addNulls(child, rep, def);
+        }
+        if (node.element != null) {
+            addNulls(node.element, rep, def);
+        }
+    }
+
+    private static int stringHeaderLength(int len) {
+        if (len < (1 << 5)) {
+            return 1;
+        } else if (len < (1 << 8)) {
+            return 2;
+        } else if (len < (1 << 16)) {
+            return 3;
+        }
+        return 5;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            Map<String, Object> footer = new LinkedHashMap<>();
+            footer.put("rowCount", rowCount);
+            footer.put("rowGroups", rowGroups);
+            int estimate = 64;
+            for (Object rowGroup : rowGroups) {
+                for (Object column : (List<?>) ((Map<?, ?>) rowGroup).get("columns")) {
+                    estimate += 64;
+                    for (Object segment : (List<?>) ((Map<?, ?>) column).get("path")) {
+                        estimate += segment == null ? 1 : 5 + 3 * ((String) segment).length();
+                    }
+                }
+                estimate += 64;
+            }
+            byte[] bytes = new Serializer(estimate).packJsonObject(footer).toBytes();
+            out.write(bytes);
+            out.writeInt(bytes.length);
+            out.write(MAGIC);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+
+/**
+ * Decoded container whose values are kept in parallel arrays instead of boxed objects.
+ * <p>
+ * Every slot has a {@link ValueType} tag. Integers, booleans and floats (as raw long bits) live in
+ * a long[], strings, binaries and nested containers in an Object[]. Both arrays are allocated
+ * lazily, so a purely numeric container never allocates the reference array and vice versa.
+ */
+public abstract class CompactContainer implements Serializable {
+    private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+    final byte[] types;
+    long[] prims;
+    Object[] refs;
+    int size;
+
+    CompactContainer(int capacity) {
+        types = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ValueType getType(int i) {
+        return VALUE_TYPES[types[checkIndex(i)]];
+    }
+
+    public boolean isNull(int i) {
+        return types[checkIndex(i)] == ValueType.NIL.ordinal();
+    }
+
+    public long getLong(int i) {
+        switch (getType(i)) {
+            case INTEGER:
+                return prims[i];
+            case FLOAT:
+                return (long) Double.longBitsToDouble(prims[i]);
+            case NIL:
+                throw new NullException();
+            default:
+                throw new FormatException(String.format("value type %s unsupport", getType(i)));
+        }
+    }
+
+    public int getInt(int i) {
+        return (int) getLong(i);
+    }
+
+    public double getDouble(int i) {
+        switch (getType(i)) {
+            case INTEGER:
+                return prims[i];
+            case FLOAT:
+                return Double.longBitsToDouble(prims[i]);
+            case NIL:
+                throw new NullException();
+            default:
+                throw new FormatException(String.format("value type %s unsupport", getType(i)));
+        }
+    }
+
+    public boolean getBoolean(int i) {
+        switch (getType(i)) {
+            case BOOLEAN:
+            case INTEGER:
+                return prims[i] > 0;
+            case FLOAT:
+                return Double.longBitsToDouble(prims[i]) > 0;
+            case NIL:
+                throw new NullException();
+            default:
+                throw new FormatException(String.format("value type %s unsupport", getType(i)));
+        }
+    }
+
+    public String getString(int i) {
+        switch (getType(i)) {
+            case STRING:
+                return (String) refs[i];
+            case INTEGER:
+                return Long.toString(prims[i]);
+            case FLOAT:
+                return Double.toString(Double.longBitsToDouble(prims[i]));
+            case NIL:
+                return null;
+            default:
+                throw new FormatException(String.format("value type %s unsupport", getType(i)));
+        }
+    }
+
+    public byte[] getBinary(int i) {
+        return (byte[]) getRef(i, ValueType.BINARY);
+    }
+
+    public CompactMap getMap(int i) {
+        return (CompactMap) getRef(i, ValueType.MAP);
+    }
+
+    public CompactList getList(int i) {
+        return (CompactList) getRef(i, ValueType.ARRAY);
+    }
+
+    /**
+     * Returns the value of slot i as an object, boxing numbers and booleans.
+     */
+    public Object get(int i) {
+        switch (getType(i)) {
+            case NIL:
+                return null;
+            case BOOLEAN:
+                return prims[i] != 0;
+            case INTEGER:
+                return prims[i];
+            case FLOAT:
+                return Double.longBitsToDouble(prims[i]);
+            default:
+                return refs[i];
+        }
+    }
+
+    private Object getRef(int i, ValueType expected) {
+        ValueType t = getType(i);
+        if (t == expected) {
+            return refs[i];
+        }
+        if (t == ValueType.NIL) {
+            return null;
+        }
+        throw new FormatException(String.format("value type %s unsupport", t));
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(i));
+        }
+        return i;
+    }
+
+    void setNil(int i) {
+        types[i] = (byte) ValueType.NIL.ordinal();
+    }
+
+    void setBoolean(int i, boolean v) {
+        setPrim(i, ValueType.BOOLEAN, v ? 1 : 0);
+    }
+
+    void setLong(int i, long v) {
+        setPrim(i, ValueType.INTEGER, v);
+    }
+
+    void setDouble(int i, double v) {
+        setPrim(i, ValueType.FLOAT, Double.doubleToRawLongBits(v));
+    }
+
+    void setRef(int i, ValueType t, Object v) {
+        if (refs == null) {
+            refs = new Object[types.length];
+        }
+        types[i] = (byte) t.ordinal();
+        refs[i] = v;
+    }
+
+    private void setPrim(int i, ValueType t, long v) {
+        if (prims == null) {
+            prims = new long[types.length];
+        }
+        types[i] = (byte) t.ordinal();
+        prims[i] = v;
+    }
+}
@@ -0,0 +1,138 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Compact decoded map.
+ * <p>
+ * Entries are stored in document order in parallel key/value arrays sized to the exact entry count;
+ * an open-addressed int table (linear probing, load factor at most 0.5) maps keys to entry indexes.
+ */
+public final class CompactMap extends CompactContainer {
+    private final String[] keys;
+    private final int[] table;
+
+    CompactMap(int capacity) {
+        super(capacity);
+        keys = new String[capacity];
+        int tableSize = 2;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        table = new int[tableSize];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Appends a key and returns its entry index. A duplicate key repoints its table slot to the new
+     * entry, so the later value wins on lookup as it would with HashMap.put.
+     */
+    int add(String key) {
+        int i = size++;
+        keys[i] = key;
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            if (keys[table[slot] - 1].equals(key)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = i + 1;
+        return i;
+    }
+
+    /**
+     * Returns the entry index of key, or -1 if absent.
+     */
+    public int indexOf(String key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        int i;
+        while ((i = table[slot]) != 0) {
+            if (keys[i - 1].equals(key)) {
+                return i - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int index(String key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            throw new NotFoundException(key);
+        }
+        return i;
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    public String keyAt(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(i));
+        }
+        return keys[i];
+    }
+
+    public ValueType getType(String key) {
+        return getType(index(key));
+    }
+
+    public long getLong(String key) {
+        return getLong(index(key));
+    }
+
+    public int getInt(String key) {
+        return getInt(index(key));
+    }
+
+    public double getDouble(String key) {
+        return getDouble(index(key));
+    }
+
+    public boolean getBoolean(String key) {
+        return getBoolean(index(key));
+    }
+
+    public String getString(String key) {
+        return getString(index(key));
+    }
+
+    public byte[] getBinary(String key) {
+        return getBinary(index(key));
+    }
+
+    public CompactMap getMap(String key) {
+        return getMap(index(key));
+    }
+
+    public CompactList getList(String key) {
+        return getList(index(key));
+    }
+
+    public Object get(String key) {
+        int i = indexOf(key);
+        return i < 0 ? null : get(i);
+    }
+}
@@ -0,0 +1,173 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Metrics that count everything, for sharing by all Serializers and Deserializers of an
+ * application and publishing over JMX.
+ * <pre>
+ *     CountingMetrics metrics = new CountingMetrics();
+ *     metrics.register("orders");
+ *     SerializerPool.getDefault().setMetrics(metrics);
+ * </pre>
+ * A high ratio of values skipped to lookups points at documents whose maps are too large to
+ * search by key; a high max write depth at documents worth flattening.
+ */
+public final class CountingMetrics implements Metrics, CountingMetricsMBean {
+    private final LongAdder documentsWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAccumulator maxWriteDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder documentsRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupMisses = new LongAdder();
+    private final LongAdder keysCompared = new LongAdder();
+    private final LongAdder valuesSkipped = new LongAdder();
+    private final LongAccumulator maxValuesSkipped = new LongAccumulator(Math::max, 0);
+    private final LongAdder bufferGrowths = new LongAdder();
+    private final LongAdder bufferOverflows = new LongAdder();
+
+    /**
+     * Registers with the platform MBean server as njson:type=Metrics,name=name.
+     */
+    public void register(String name) throws Exception {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName(name));
+    }
+
+    public void unregister(String name) throws Exception {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+    }
+
+    private static ObjectName objectName(String name) throws Exception {
+        return new ObjectName("njson:type=Metrics,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public void documentWritten(int bytes, int maxDepth) {
+        documentsWritten.increment();
+        bytesWritten.add(bytes);
+        maxWriteDepth.accumulate(maxDepth);
+    }
+
+    @Override
+    public void documentRead(int bytes) {
+        documentsRead.increment();
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void lookup(int depth, int keysCompared, int valuesSkipped, boolean found) {
+        lookups.increment();
+        if (!found) {
+            lookupMisses.increment();
+        }
+        this.keysCompared.add(keysCompared);
+        this.valuesSkipped.add(valuesSkipped);
+        maxValuesSkipped.accumulate(valuesSkipped);
+    }
+
+    @Override
+    public void bufferGrown(int capacity) {
+        bufferGrowths.increment();
+    }
+
+    @Override
+    public void bufferOverflow() {
+        bufferOverflows.increment();
+    }
+
+    @Override
+    public long getDocumentsWritten() {
+        return documentsWritten.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getMaxWriteDepth() {
+        return maxWriteDepth.get();
+    }
+
+    @Override
+    public long getDocumentsRead() {
+        return documentsRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getLookupMisses() {
+        return lookupMisses.sum();
+    }
+
+    @Override
+    public long getKeysCompared() {
+        return keysCompared.sum();
+    }
+
+    @Override
+    public long getValuesSkipped() {
+        return valuesSkipped.sum();
+    }
+
+    @Override
+    public long getMaxValuesSkipped() {
+        return maxValuesSkipped.get();
+    }
+
+    @Override
+    public long getBufferGrowths() {
+        return bufferGrowths.sum();
+    }
+
+    @Override
+    public long getBufferOverflows() {
+        return bufferOverflows.sum();
+    }
+
+    @Override
+    public void reset() {
+        documentsWritten.reset();
+        bytesWritten.reset();
+        maxWriteDepth.reset();
+        documentsRead.reset();
+        bytesRead.reset();
+        lookups.reset();
+        lookupMisses.reset();
+        keysCompared.reset();
+        valuesSkipped.reset();
+        maxValuesSkipped.reset();
+        bufferGrowths.reset();
+        bufferOverflows.reset();
+    }
+}
@@ -0,0 +1,48 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * JMX view of {@link CountingMetrics}.
+ */
+public interface CountingMetricsMBean {
+    long getDocumentsWritten();
+
+    long getBytesWritten();
+
+    long getMaxWriteDepth();
+
+    long getDocumentsRead();
+
+    long getBytesRead();
+
+    long getLookups();
+
+    long getLookupMisses();
+
+    long getKeysCompared();
+
+    long getValuesSkipped();
+
+    long getMaxValuesSkipped();
+
+    long getBufferGrowths();
+
+    long getBufferOverflows();
+
+    void reset();
+}
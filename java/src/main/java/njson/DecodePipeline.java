@@ -0,0 +1,207 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes a stream of njson documents on an executor.
+ * <pre>
+ *     DecodePipeline&lt;Object&gt; pipeline = new DecodePipeline&lt;&gt;(Deserializer::unpackJsonObject);
+ *     while ((record = reader.next()) != null) {
+ *         pipeline.submit(new Slice(record));
+ *         while (pipeline.pending() &gt;= 1024) {
+ *             consume(pipeline.take());
+ *         }
+ *     }
+ *     while (pipeline.pending() &gt; 0) {
+ *         consume(pipeline.take());
+ *     }
+ * </pre>
+ * At most {@link #setCapacity(int) capacity} documents are submitted and not yet taken;
+ * {@link #submit(Slice)} blocks beyond that, so a fast producer cannot outrun the consumer.
+ * Results are taken in submission order, or in completion order if the pipeline is not
+ * {@link #setOrdered(boolean) ordered}. Deserializers come from the default
+ * {@link SerializerPool}, one per concurrently running task.
+ * <p>
+ * The executor defaults to the common ForkJoinPool; any executor works, including one that starts a
+ * virtual thread per task. One thread submits and one thread takes, which may be the same thread
+ * as in {@link #decodeAll(Iterable)}.
+ */
+public final class DecodePipeline<T> {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Turns the document the deserializer was initialized with into a result.
+     */
+    public interface Decoder<T> {
+        T decode(Deserializer deser) throws Exception;
+    }
+
+    private final Decoder<T> decoder;
+    private final ExecutorService executor;
+    private final LinkedBlockingQueue<Future<T>> ordered = new LinkedBlockingQueue<>();
+    private CompletionService<T> completion;
+    private ExtensionRegistry extensions = ExtensionRegistry.DEFAULT;
+    private Semaphore permits = new Semaphore(DEFAULT_CAPACITY);
+    private int capacity = DEFAULT_CAPACITY;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public DecodePipeline(Decoder<T> decoder) {
+        this(decoder, ForkJoinPool.commonPool());
+    }
+
+    public DecodePipeline(Decoder<T> decoder, ExecutorService executor) {
+        this.decoder = decoder;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the maximum number of documents in flight. Must be called before the first submit.
+     */
+    public void setCapacity(int capacity) {
+        checkIdle();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+    }
+
+    /**
+     * Chooses between results in submission order (the default) and in completion order. Must be
+     * called before the first submit.
+     */
+    public void setOrdered(boolean ordered) {
+        checkIdle();
+        this.completion = ordered ? null : new ExecutorCompletionService<>(executor);
+    }
+
+    public void setExtensionRegistry(ExtensionRegistry extensions) {
+        this.extensions = extensions;
+    }
+
+    private void checkIdle() {
+        if (pending.get() > 0) {
+            throw new IllegalStateException("pipeline has documents in flight");
+        }
+    }
+
+    /**
+     * Returns the number of documents submitted and not yet taken.
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Queues a document for decoding, blocking while the pipeline is at capacity. The bytes must not
+     * change until its result is taken.
+     */
+    public void submit(final Slice document) throws InterruptedException {
+        permits.acquire();
+        Callable<T> task = new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Deserializer deser = SerializerPool.getDefault().acquireDeserializer();
+                try {
+                    deser.setExtensionRegistry(extensions);
+                    deser.init(document);
+                    return decoder.decode(deser);
+                } finally {
+                    SerializerPool.getDefault().release(deser);
+                }
+            }
+        };
+        if (completion != null) {
+            completion.submit(task);
+        } else {
+            ordered.add(executor.submit(task));
+        }
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Waits for and returns the next result, waiting for a document to be submitted if none is in
+     * flight. An exception thrown while decoding the document is rethrown here.
+     */
+    public T take() throws Exception {
+        Future<T> future = completion != null ? completion.take() : ordered.take();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        } finally {
+            pending.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * Decodes all documents, keeping at most the capacity in flight.
+     */
+    public List<T> decodeAll(Iterable<Slice> documents) throws Exception {
+        List<T> results = new ArrayList<>();
+        for (Slice document : documents) {
+            if (pending.get() == capacity) {
+                results.add(take());
+            }
+            submit(document);
+        }
+        while (pending.get() > 0) {
+            results.add(take());
+        }
+        return results;
+    }
+
+    /**
+     * Splits concatenated documents, each a header followed by its root container.
+     */
+    public static List<Slice> split(byte[] bytes) throws Exception {
+        return split(bytes, 0, bytes.length);
+    }
+
+    public static List<Slice> split(byte[] bytes, int offset, int length) throws Exception {
+        List<Slice> documents = new ArrayList<>();
+        Deserializer deser = new Deserializer();
+        int end = offset + length;
+        int start = offset;
+        while (start < end) {
+            deser.init(bytes, start, end);
+            deser.skipValue();
+            int next = deser.buffer.position();
+            documents.add(new Slice(bytes, start, next - start));
+            start = next;
+        }
+        return documents;
+    }
+}
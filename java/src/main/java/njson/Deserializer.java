@@ -2,14 +2,36 @@ package njson;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public final class Deserializer implements Serializable {
     private static final int INIT_BUFF_SIZE = 16;
     private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    /**
+     * arrays with fewer elements are unpacked sequentially, see {@link #getList(String, ForkJoinPool)}
+     */
+    static final int PARALLEL_THRESHOLD = 4 * 1024;
+    private static final int MIN_PARALLEL_RANGE = 1024;
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    /**
+     * position returned by {@link #findValuePos(String)} for a missing key
+     */
+    public static final int NOT_FOUND = -1;
 
     /**
      * Current internal buffer.
@@ -18,6 +40,25 @@ public final class Deserializer implements Serializable {
     byte delimiter = '.';
     byte[] tmpBytes;
     byte[] keyBytes;
+    int[] positions = new int[0];
+    ExtensionRegistry extensions = ExtensionRegistry.DEFAULT;
+    Metrics metrics = Metrics.NOOP;
+    /**
+     * start of the root container, after the header and the key filter if any
+     */
+    int dataStart;
+    /**
+     * position of the key filter bits, its size and number of hashes; filterHashes is 0 without one
+     */
+    int filterStart;
+    int filterLog2Bytes;
+    int filterHashes;
+    /**
+     * counts of the lookup in progress, see {@link Metrics#lookup(int, int, int, boolean)}
+     */
+    int lookupDepth;
+    int keysCompared;
+    int valuesSkipped;
 
     public Deserializer() {
         buffer = new BytesBuffer();
@@ -32,15 +73,65 @@ public final class Deserializer implements Serializable {
     public void init(byte[] bytes, int offset, int end) {
         buffer.init(bytes, offset, end);
         unpackHeader();
+        metrics.documentRead(end - offset);
+    }
+
+    public void init(Slice slice) {
+        init(slice.array(), slice.offset(), slice.end());
+    }
+
+    /**
+     * Positions the deserializer on a single encoded value without a document header, such as a
+     * value returned by {@link #getRaw(String)}. Lookups by path work if the value is a map.
+     */
+    public void initRaw(byte[] bytes, int offset, int end, boolean bigEndian) {
+        buffer.init(bytes, offset, end);
+        buffer.setBigEndian(bigEndian);
+        dataStart = offset;
+        filterHashes = 0;
+    }
+
+    /**
+     * Positions the deserializer on a single big-endian encoded value, as written by
+     * {@link Serializer}, see {@link #initRaw(byte[], int, int, boolean)}.
+     */
+    public void initRaw(Slice value) {
+        initRaw(value.array(), value.offset(), value.end(), true);
+    }
+
+    /**
+     * Prepares the deserializer for reuse by another owner, see {@link SerializerPool}: drops the
+     * document and shrinks scratch buffers grown for long strings or keys.
+     */
+    void reset() {
+        buffer.init(EMPTY, 0, 0);
+        delimiter = '.';
+        extensions = ExtensionRegistry.DEFAULT;
+        metrics = Metrics.NOOP;
+        if (tmpBytes.length > MAX_RETAINED_SIZE) {
+            tmpBytes = new byte[INIT_BUFF_SIZE];
+        }
+        if (keyBytes.length > MAX_RETAINED_SIZE) {
+            keyBytes = new byte[INIT_BUFF_SIZE];
+        }
     }
 
     public void setDelimiter(byte delimiter) {
         this.delimiter = delimiter;
     }
 
+    public void setExtensionRegistry(ExtensionRegistry extensions) {
+        this.extensions = extensions;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     private byte[] ensureTmpBytesCapacity(int minimumSize) throws IOException {
         if (tmpBytes.length < minimumSize) {
             tmpBytes = new byte[minimumSize / INIT_BUFF_SIZE * INIT_BUFF_SIZE + INIT_BUFF_SIZE];
+            metrics.bufferGrown(tmpBytes.length);
         }
         return tmpBytes;
     }
@@ -48,6 +139,7 @@ public final class Deserializer implements Serializable {
     private byte[] ensureKeyBytesCapacity(int minimumSize) throws IOException {
         if (keyBytes.length < minimumSize) {
             keyBytes = new byte[minimumSize / INIT_BUFF_SIZE * INIT_BUFF_SIZE + INIT_BUFF_SIZE];
+            metrics.bufferGrown(keyBytes.length);
         }
         return keyBytes;
     }
@@ -55,10 +147,46 @@ public final class Deserializer implements Serializable {
     private void unpackHeader() {
         byte version = buffer.get();
         buffer.setBigEndian(Code.getBigEndian(buffer.get()));
+        filterHashes = 0;
+        if (version == Code.SER_VERSION_KEY_FILTER) {
+            filterHashes = buffer.get();
+            filterLog2Bytes = buffer.get();
+            if (filterLog2Bytes > KeyFilter.MAX_LOG2_BYTES || filterLog2Bytes < 0) {
+                throw new FormatException("key filter size " + filterLog2Bytes + " unsupport");
+            }
+            filterStart = buffer.position();
+            buffer.position(filterStart + (1 << filterLog2Bytes));
+        }
+        dataStart = buffer.position();
     }
 
     private void resetPostion() {
-        buffer.position(buffer.offset() + Code.HEADER_LENGTH);
+        buffer.position(dataStart);
+    }
+
+    /**
+     * Returns the end of the longest prefix of the path in keyBytes that the key filter of the
+     * document may contain, keyLen if it may contain the whole path, or -1 if not even its first key.
+     */
+    private int filteredPrefixEnd(int keyLen) {
+        long hash = 0;
+        int fromIndex = 0;
+        int prefixEnd = -1;
+        while (true) {
+            int endIndex = indexOf(keyBytes, delimiter, fromIndex, keyLen);
+            if (endIndex < 0) {
+                endIndex = keyLen;
+            }
+            hash = KeyFilter.extend(hash, keyBytes, fromIndex, endIndex - fromIndex);
+            if (!KeyFilter.mightContain(buffer.array(), filterStart, filterLog2Bytes, filterHashes, hash)) {
+                return prefixEnd;
+            }
+            prefixEnd = endIndex;
+            if (endIndex == keyLen) {
+                return keyLen;
+            }
+            fromIndex = endIndex + 1;
+        }
     }
 
     private int length(byte len) {
@@ -79,33 +207,65 @@ public final class Deserializer implements Serializable {
     }
 
     public int getValuePos(String key) throws Exception {
+        Tracing.Tracer tracer = Tracing.TRACER;
+        if (tracer == null) {
+            return valuePos(key);
+        }
+        Object event = tracer.beginLookup();
+        int pos = valuePos(key);
+        tracer.endLookup(event, key, buffer.end() - buffer.offset(), lookupDepth, valuesSkipped, pos >= 0);
+        return pos;
+    }
+
+    private int valuePos(String key) throws Exception {
         resetPostion();
         //简单考虑了非ascii字符，但是2倍其实是不够的
         int keyLen = Utils.encodeUTF8(key, 0, key.length(), ensureKeyBytesCapacity(key.length() * 2));
         int fromIndex = 0;
         int endIndex;
         int pos;
+        lookupDepth = 0;
+        keysCompared = 0;
+        valuesSkipped = 0;
+        // with a key filter only the prefix it may contain is walked; the rest of the path is missing
+        int walkEnd = filterHashes > 0 ? filteredPrefixEnd(keyLen) : keyLen;
+        if (walkEnd < 0) {
+            metrics.lookup(lookupDepth, keysCompared, valuesSkipped, false);
+            return -1;
+        }
 
         while (true) {
             endIndex = indexOf(keyBytes, delimiter, fromIndex, keyLen);
             if (endIndex < 0) {
                 endIndex = keyLen;
             }
+            lookupDepth++;
             pos = getMapValuePos(keyBytes, fromIndex, endIndex);
             if (pos < 0) {
+                metrics.lookup(lookupDepth, keysCompared, valuesSkipped, false);
                 return pos;
             }
             if (endIndex == keyLen) {
                 break;
             }
+            if (endIndex == walkEnd) {
+                // a value that is not a map fails like it does when the walk goes on into it
+                Format f = Format.valueOf(buffer.get(pos));
+                if (f != Format.FIXMAP && f != Format.MAP16 && f != Format.MAP32) {
+                    throw new FormatException(f);
+                }
+                metrics.lookup(lookupDepth, keysCompared, valuesSkipped, false);
+                return -1;
+            }
 
             fromIndex = endIndex + 1;
         }
 
+        metrics.lookup(lookupDepth, keysCompared, valuesSkipped, true);
         return pos;
     }
 
-    private String getString(int pos) throws Exception {
+    private String getString(int pos) {
         int len = 0;
         byte b = buffer.get(pos++);
         Format f = Format.valueOf(b);
@@ -128,7 +288,7 @@ public final class Deserializer implements Serializable {
             case POSFIXINT:
                 return Integer.toString(b & 0x7f);
             case NEGFIXINT:
-                return Integer.toString(-(b & 0x3f));
+                return Integer.toString(-(b & 0x1f));
             case INT8:
                 return Integer.toString(buffer.get(pos));
             case UINT8:
@@ -161,14 +321,14 @@ public final class Deserializer implements Serializable {
         }
     }
 
-    private int getInt(int pos) throws Exception {
+    private int getInt(int pos) {
         byte b = buffer.get(pos++);
         Format f = Format.valueOf(b);
         switch (f) {
             case POSFIXINT:
                 return b & 0x7f;
             case NEGFIXINT:
-                return -(b & 0x3f);
+                return -(b & 0x1f);
             case INT8:
                 return buffer.get(pos);
             case UINT8:
@@ -194,14 +354,14 @@ public final class Deserializer implements Serializable {
         }
     }
 
-    private long getLong(int pos) throws Exception {
+    long getLong(int pos) {
         byte b = buffer.get(pos++);
         Format f = Format.valueOf(b);
         switch (f) {
             case POSFIXINT:
                 return b & 0x7f;
             case NEGFIXINT:
-                return -(b & 0x3f);
+                return -(b & 0x1f);
             case INT8:
                 return buffer.get(pos);
             case UINT8:
@@ -228,14 +388,14 @@ public final class Deserializer implements Serializable {
         }
     }
 
-    private float getFloat(int pos) throws Exception {
+    private float getFloat(int pos) {
         byte b = buffer.get(pos++);
         Format f = Format.valueOf(b);
         switch (f) {
             case POSFIXINT:
                 return b & 0x7f;
             case NEGFIXINT:
-                return -(b & 0x3f);
+                return -(b & 0x1f);
             case INT8:
                 return buffer.get(pos);
             case UINT8:
@@ -262,14 +422,14 @@ public final class Deserializer implements Serializable {
         }
     }
 
-    private double getDouble(int pos) throws Exception {
+    double getDouble(int pos) {
         byte b = buffer.get(pos++);
         Format f = Format.valueOf(b);
         switch (f) {
             case POSFIXINT:
                 return b & 0x7f;
             case NEGFIXINT:
-                return -(b & 0x3f);
+                return -(b & 0x1f);
             case INT8:
                 return buffer.get(pos);
             case UINT8:
@@ -296,7 +456,7 @@ public final class Deserializer implements Serializable {
         }
     }
 
-    private boolean getBoolean(int pos) throws Exception {
+    boolean getBoolean(int pos) {
         byte b = buffer.get(pos++);
         Format f = Format.valueOf(b);
         switch (f) {
@@ -381,6 +541,106 @@ public final class Deserializer implements Serializable {
         return getBoolean(pos);
     }
 
+    /**
+     * Returns the position of the value at key like {@link #getValuePos(String)}, or
+     * {@link #NOT_FOUND} if there is none. Malformed documents throw FormatException.
+     */
+    public int findValuePos(String key) {
+        try {
+            return getValuePos(key);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FormatException(e);
+        }
+    }
+
+    /**
+     * Returns the position of a non-null value at key, or NOT_FOUND.
+     */
+    private int findNonNullPos(String key) {
+        int pos = findValuePos(key);
+        return pos >= 0 && buffer.get(pos) == Code.NIL ? NOT_FOUND : pos;
+    }
+
+    /**
+     * Returns the int at key, or defaultValue if the key is missing or null. Like the other
+     * getXOr and tryGetX methods it throws no NotFoundException or NullException; values of another
+     * type still throw FormatException.
+     */
+    public int getIntOr(String key, int defaultValue) {
+        int pos = findNonNullPos(key);
+        return pos < 0 ? defaultValue : getInt(pos);
+    }
+
+    public long getLongOr(String key, long defaultValue) {
+        int pos = findNonNullPos(key);
+        return pos < 0 ? defaultValue : getLong(pos);
+    }
+
+    public double getDoubleOr(String key, double defaultValue) {
+        int pos = findNonNullPos(key);
+        return pos < 0 ? defaultValue : getDouble(pos);
+    }
+
+    public boolean getBooleanOr(String key, boolean defaultValue) {
+        int pos = findNonNullPos(key);
+        return pos < 0 ? defaultValue : getBoolean(pos);
+    }
+
+    public String getStringOr(String key, String defaultValue) {
+        int pos = findNonNullPos(key);
+        return pos < 0 ? defaultValue : getString(pos);
+    }
+
+    /**
+     * Looks up the long at key into value.
+     *
+     * @return {@link ValueHolder#FOUND}, {@link ValueHolder#MISSING} or {@link ValueHolder#NULL}
+     */
+    public int tryGetLong(String key, ValueHolder value) {
+        int pos = findValuePos(key);
+        int status = status(pos);
+        if (status == ValueHolder.FOUND) {
+            value.longValue = getLong(pos);
+        }
+        return status;
+    }
+
+    public int tryGetDouble(String key, ValueHolder value) {
+        int pos = findValuePos(key);
+        int status = status(pos);
+        if (status == ValueHolder.FOUND) {
+            value.doubleValue = getDouble(pos);
+        }
+        return status;
+    }
+
+    public int tryGetBoolean(String key, ValueHolder value) {
+        int pos = findValuePos(key);
+        int status = status(pos);
+        if (status == ValueHolder.FOUND) {
+            value.booleanValue = getBoolean(pos);
+        }
+        return status;
+    }
+
+    public int tryGetString(String key, ValueHolder value) {
+        int pos = findValuePos(key);
+        int status = status(pos);
+        if (status == ValueHolder.FOUND) {
+            value.stringValue = getString(pos);
+        }
+        return status;
+    }
+
+    private int status(int pos) {
+        if (pos < 0) {
+            return ValueHolder.MISSING;
+        }
+        return buffer.get(pos) == Code.NIL ? ValueHolder.NULL : ValueHolder.FOUND;
+    }
+
     public Object getObject(String key) throws Exception {
         int pos = getValuePos(key);
         if (pos < 0) {
@@ -390,82 +650,822 @@ public final class Deserializer implements Serializable {
         return unpackValue(pos);
     }
 
-    public int getMapValuePos(byte[] key, int fromIndex, int endIndex) throws Exception {
+    /**
+     * Returns the encoded value at key, a view of the document rather than a copy. The value can be
+     * read with {@link #initRaw(Slice)}, embedded in another document with
+     * {@link Serializer#packRaw(Slice)}, or made a document of its own with
+     * {@link Serializer#packDocument(Slice)}, none of which decode it.
+     */
+    public Slice getRaw(String key) throws Exception {
+        int pos = getValuePos(key);
+        if (pos < 0) {
+            throw new NotFoundException(key);
+        }
+
+        buffer.position(pos);
+        skipValue();
+        return new Slice(buffer.array(), pos, buffer.position() - pos);
+    }
+
+    /**
+     * Returns the decimal extension value at key. Plain integer and float values are converted.
+     */
+    public BigDecimal getBigDecimal(String key) throws Exception {
+        int pos = getValuePos(key);
+        if (pos < 0) {
+            throw new NotFoundException(key);
+        }
+
+        Format f = Format.valueOf(buffer.get(pos));
+        switch (f.getValueType()) {
+            case INTEGER:
+                return BigDecimal.valueOf(getLong(pos));
+            case FLOAT:
+                return BigDecimal.valueOf(getDouble(pos));
+            default:
+                return getExtension(pos, BigDecimal.class);
+        }
+    }
+
+    public Instant getInstant(String key) throws Exception {
+        int pos = getValuePos(key);
+        if (pos < 0) {
+            throw new NotFoundException(key);
+        }
+
+        return getExtension(pos, Instant.class);
+    }
+
+    public UUID getUUID(String key) throws Exception {
+        int pos = getValuePos(key);
+        if (pos < 0) {
+            throw new NotFoundException(key);
+        }
+
+        return getExtension(pos, UUID.class);
+    }
+
+    private <T> T getExtension(int pos, Class<T> cls) throws Exception {
+        Format f = Format.valueOf(buffer.get(pos));
+        if (f != Format.NIL && !f.getValueType().isExtensionType()) {
+            throw new FormatException(f);
+        }
+
+        Object v = unpackValue(pos);
+        if (v != null && !cls.isInstance(v)) {
+            throw new FormatException(String.format("extension %s unsupport", v));
+        }
+        return cls.cast(v);
+    }
+
+    public int[] getIntArray(String key) throws Exception {
+        int pos = getArrayPos(key);
+        int n = enterPackedArray(pos);
+        if (n >= 0) {
+            int[] dst = new int[n];
+            unpackPackedInts(n, dst);
+            return dst;
+        }
+
+        int end = enterArray(pos);
+        int start = buffer.position();
+        int stride = stride(start, end);
+        int[] dst = new int[countValues(start, end, stride)];
+        unpackInts(start, end, stride, dst);
+        return dst;
+    }
+
+    /**
+     * Decodes the array at key into dst.
+     *
+     * @return number of elements written
+     * @throws IndexOutOfBoundsException if dst is shorter than the array
+     */
+    public int getIntArray(String key, int[] dst) throws Exception {
+        int pos = getArrayPos(key);
+        int n = enterPackedArray(pos);
+        if (n >= 0) {
+            unpackPackedInts(checkArrayLength(n, dst.length), dst);
+            return n;
+        }
+
+        int end = enterArray(pos);
+        int start = buffer.position();
+        int stride = stride(start, end);
+        n = checkArrayLength(countValues(start, end, stride), dst.length);
+        unpackInts(start, end, stride, dst);
+        return n;
+    }
+
+    public long[] getLongArray(String key) throws Exception {
+        int pos = getArrayPos(key);
+        int n = enterPackedArray(pos);
+        if (n >= 0) {
+            long[] dst = new long[n];
+            unpackPackedLongs(n, dst);
+            return dst;
+        }
+
+        int end = enterArray(pos);
+        int start = buffer.position();
+        int stride = stride(start, end);
+        long[] dst = new long[countValues(start, end, stride)];
+        unpackLongs(start, end, stride, dst);
+        return dst;
+    }
+
+    /**
+     * Decodes the array at key into dst.
+     *
+     * @return number of elements written
+     * @throws IndexOutOfBoundsException if dst is shorter than the array
+     */
+    public int getLongArray(String key, long[] dst) throws Exception {
+        int pos = getArrayPos(key);
+        int n = enterPackedArray(pos);
+        if (n >= 0) {
+            unpackPackedLongs(checkArrayLength(n, dst.length), dst);
+            return n;
+        }
+
+        int end = enterArray(pos);
+        int start = buffer.position();
+        int stride = stride(start, end);
+        n = checkArrayLength(countValues(start, end, stride), dst.length);
+        unpackLongs(start, end, stride, dst);
+        return n;
+    }
+
+    public double[] getDoubleArray(String key) throws Exception {
+        int pos = getArrayPos(key);
+        int n = enterPackedArray(pos);
+        if (n >= 0) {
+            double[] dst = new double[n];
+            unpackPackedDoubles(n, dst);
+            return dst;
+        }
+
+        int end = enterArray(pos);
+        int start = buffer.position();
+        int stride = stride(start, end);
+        double[] dst = new double[countValues(start, end, stride)];
+        unpackDoubles(start, end, stride, dst);
+        return dst;
+    }
+
+    /**
+     * Decodes the array at key into dst.
+     *
+     * @return number of elements written
+     * @throws IndexOutOfBoundsException if dst is shorter than the array
+     */
+    public int getDoubleArray(String key, double[] dst) throws Exception {
+        int pos = getArrayPos(key);
+        int n = enterPackedArray(pos);
+        if (n >= 0) {
+            unpackPackedDoubles(checkArrayLength(n, dst.length), dst);
+            return n;
+        }
+
+        int end = enterArray(pos);
+        int start = buffer.position();
+        int stride = stride(start, end);
+        n = checkArrayLength(countValues(start, end, stride), dst.length);
+        unpackDoubles(start, end, stride, dst);
+        return n;
+    }
+
+    /**
+     * Returns a read-only view over the elements of the packed int array at key, without copying.
+     */
+    public IntBuffer getIntBuffer(String key) throws Exception {
+        int n = enterPackedArray(getArrayPos(key), Code.EXT_INT32_ARRAY);
+        return buffer.asIntBuffer(buffer.position(), n, packedBigEndian(buffer.position()));
+    }
+
+    public LongBuffer getLongBuffer(String key) throws Exception {
+        int n = enterPackedArray(getArrayPos(key), Code.EXT_INT64_ARRAY);
+        return buffer.asLongBuffer(buffer.position(), n, packedBigEndian(buffer.position()));
+    }
+
+    public FloatBuffer getFloatBuffer(String key) throws Exception {
+        int n = enterPackedArray(getArrayPos(key), Code.EXT_FLOAT32_ARRAY);
+        return buffer.asFloatBuffer(buffer.position(), n, packedBigEndian(buffer.position()));
+    }
+
+    public DoubleBuffer getDoubleBuffer(String key) throws Exception {
+        int n = enterPackedArray(getArrayPos(key), Code.EXT_FLOAT64_ARRAY);
+        return buffer.asDoubleBuffer(buffer.position(), n, packedBigEndian(buffer.position()));
+    }
+
+    private int getArrayPos(String key) throws Exception {
+        int pos = getValuePos(key);
+        if (pos < 0) {
+            throw new NotFoundException(key);
+        }
+        return pos;
+    }
+
+    private int checkArrayLength(int n, int capacity) {
+        if (n > capacity) {
+            throw new IndexOutOfBoundsException(String.format("array length %d > %d", n, capacity));
+        }
+        return n;
+    }
+
+    /**
+     * Reads the array header at pos and leaves the buffer at the first element.
+     *
+     * @return end position of the array
+     */
+    private int enterArray(int pos) throws Exception {
+        buffer.position(pos);
         int len;
         byte b = buffer.get();
         Format f = Format.valueOf(b);
         switch (f) {
-            case FIXMAP: {
+            case FIXARRAY:
                 len = b & 0x0f;
                 break;
-            }
-            case MAP16: {
+            case ARRAY16:
                 len = length(buffer.getShort());
                 break;
-            }
-            case MAP32: {
+            case ARRAY32:
                 len = buffer.getInt();
                 break;
-            }
+            case NIL:
+                throw new NullException();
             default:
                 throw new FormatException(f);
         }
+        return buffer.position() + len;
+    }
 
-        int strLen = 0;
-        int comp = 0;
-        int end = buffer.position() + len;
-        while (buffer.position() < end) {
-            //key
-            b = buffer.get();
-            f = Format.valueOf(b);
-            switch (f) {
-                case FIXSTR:
-                    strLen = b & 0x1f;
-                    break;
-                case STR8:
-                    strLen = length(buffer.get());
-                    break;
-                case STR16:
-                    strLen = length(buffer.getShort());
-                    break;
-                case STR32:
-                    strLen = buffer.getInt();
-                    break;
-                default:
-                    throw new FormatException(f);
-            }
-
-            if (strLen > 0) {
-                buffer.getBytes(ensureTmpBytesCapacity(strLen), strLen);
-            }
-
-            if (Utils.bytesEquals(tmpBytes, 0, strLen, key, fromIndex, endIndex)) {
-                return buffer.position();
-            } else {
-                skipValue();
-            }
+    private static int packedWidth(byte extType) {
+        switch (extType) {
+            case Code.EXT_INT32_ARRAY:
+            case Code.EXT_FLOAT32_ARRAY:
+                return 4;
+            case Code.EXT_INT64_ARRAY:
+            case Code.EXT_FLOAT64_ARRAY:
+                return 8;
+            default:
+                return 0;
         }
-
-        return -1;
     }
 
-    public void skipValue() throws Exception {
-        int skiplen = 0;
-        byte b = buffer.get();
-        Format f = Format.valueOf(b);
-        switch (f) {
-            case FIXSTR:
-                skiplen = b & 0x1f;
+    /**
+     * If the value at pos is a packed array, leaves the buffer at its first element and returns the
+     * element count. Returns -1 otherwise.
+     */
+    private int enterPackedArray(int pos) {
+        int len;
+        int p = pos + 1;
+        switch (Format.valueOf(buffer.get(pos))) {
+            case FIXEXT1:
+                len = 1;
                 break;
-            case FIXMAP:
-                skiplen = b & 0x0f;
+            case EXT8:
+                len = length(buffer.get(p));
+                p += 1;
                 break;
-            case FIXARRAY:
-                skiplen = b & 0x0f;
+            case EXT16:
+                len = length(buffer.getShort(p));
+                p += 2;
                 break;
-            case STR8:
-            case BIN8:
-                skiplen = length(buffer.get());
+            case EXT32:
+                len = buffer.getInt(p);
+                p += 4;
+                break;
+            default:
+                return -1;
+        }
+
+        byte type = buffer.get(p++);
+        int width = packedWidth(type);
+        if (width == 0) {
+            return -1;
+        }
+        // skip the byte order flag
+        buffer.position(p + 1);
+        return (len - 1) / width;
+    }
+
+    private int enterPackedArray(int pos, byte extType) {
+        int n = enterPackedArray(pos);
+        if (n < 0) {
+            throw new FormatException(Format.valueOf(buffer.get(pos)));
+        }
+        byte type = packedType(buffer.position());
+        if (type != extType) {
+            throw new FormatException(String.format("extension type %d unsupport", type));
+        }
+        return n;
+    }
+
+    /**
+     * Returns the element type of the packed array whose first element is at elements.
+     */
+    private byte packedType(int elements) {
+        return buffer.get(elements - 2);
+    }
+
+    private boolean packedBigEndian(int elements) {
+        return Code.getBigEndian(buffer.get(elements - 1));
+    }
+
+    private long packedLong(byte type, boolean bigEndian, int pos) {
+        switch (type) {
+            case Code.EXT_INT32_ARRAY:
+                return bigEndian ? buffer.getIntB(pos) : buffer.getIntL(pos);
+            case Code.EXT_INT64_ARRAY:
+                return bigEndian ? buffer.getLongB(pos) : buffer.getLongL(pos);
+            case Code.EXT_FLOAT32_ARRAY:
+                return (long) (bigEndian ? buffer.getFloatB(pos) : buffer.getFloatL(pos));
+            default:
+                return (long) (bigEndian ? buffer.getDoubleB(pos) : buffer.getDoubleL(pos));
+        }
+    }
+
+    private double packedDouble(byte type, boolean bigEndian, int pos) {
+        switch (type) {
+            case Code.EXT_INT32_ARRAY:
+                return bigEndian ? buffer.getIntB(pos) : buffer.getIntL(pos);
+            case Code.EXT_INT64_ARRAY:
+                return bigEndian ? buffer.getLongB(pos) : buffer.getLongL(pos);
+            case Code.EXT_FLOAT32_ARRAY:
+                return bigEndian ? buffer.getFloatB(pos) : buffer.getFloatL(pos);
+            default:
+                return bigEndian ? buffer.getDoubleB(pos) : buffer.getDoubleL(pos);
+        }
+    }
+
+    private void unpackPackedInts(int n, int[] dst) {
+        int pos = buffer.position();
+        byte type = packedType(pos);
+        boolean bigEndian = packedBigEndian(pos);
+        if (type == Code.EXT_INT32_ARRAY) {
+            buffer.getInts(pos, bigEndian, dst, 0, n);
+            return;
+        }
+        int width = packedWidth(type);
+        for (int i = 0; i < n; i++, pos += width) {
+            dst[i] = (int) packedLong(type, bigEndian, pos);
+        }
+    }
+
+    private void unpackPackedLongs(int n, long[] dst) {
+        int pos = buffer.position();
+        byte type = packedType(pos);
+        boolean bigEndian = packedBigEndian(pos);
+        if (type == Code.EXT_INT64_ARRAY) {
+            buffer.getLongs(pos, bigEndian, dst, 0, n);
+            return;
+        }
+        int width = packedWidth(type);
+        for (int i = 0; i < n; i++, pos += width) {
+            dst[i] = packedLong(type, bigEndian, pos);
+        }
+    }
+
+    private void unpackPackedDoubles(int n, double[] dst) {
+        int pos = buffer.position();
+        byte type = packedType(pos);
+        boolean bigEndian = packedBigEndian(pos);
+        if (type == Code.EXT_FLOAT64_ARRAY) {
+            buffer.getDoubles(pos, bigEndian, dst, 0, n);
+            return;
+        }
+        int width = packedWidth(type);
+        for (int i = 0; i < n; i++, pos += width) {
+            dst[i] = packedDouble(type, bigEndian, pos);
+        }
+    }
+
+    /**
+     * Size in bytes of a value of format f including its format byte, or 0 if it is not fixed.
+     */
+    private static int fixedWidth(Format f) {
+        switch (f) {
+            case POSFIXINT:
+            case NEGFIXINT:
+                return 1;
+            case INT8:
+            case UINT8:
+                return 2;
+            case INT16:
+            case UINT16:
+                return 3;
+            case INT32:
+            case UINT32:
+            case FLOAT32:
+                return 5;
+            case INT64:
+            case UINT64:
+            case FLOAT64:
+                return 9;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the value width if every value between start and end has the same fixed-width format,
+     * otherwise 0.
+     */
+    private int stride(int start, int end) {
+        if (start >= end) {
+            return 0;
+        }
+
+        Format f = Format.valueOf(buffer.get(start));
+        int width = fixedWidth(f);
+        if (width > 0 && (end - start) % width == 0) {
+            int pos = start + width;
+            while (pos < end && Format.valueOf(buffer.get(pos)) == f) {
+                pos += width;
+            }
+            if (pos == end) {
+                return width;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Counts the values between start and end, from the byte length if they are of the fixed width
+     * stride, otherwise by skipping them one by one.
+     */
+    private int countValues(int start, int end, int stride) throws Exception {
+        if (stride > 0) {
+            return (end - start) / stride;
+        }
+
+        int count = 0;
+        buffer.position(start);
+        while (buffer.position() < end) {
+            skipValue();
+            count++;
+        }
+        return count;
+    }
+
+    private int nextValuePos(int pos) throws Exception {
+        buffer.position(pos);
+        skipValue();
+        return buffer.position();
+    }
+
+    private void unpackInts(int start, int end, int stride, int[] dst) throws Exception {
+        int i = 0;
+        if (stride > 0) {
+            switch (Format.valueOf(buffer.get(start))) {
+                case INT8:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.get(pos);
+                    }
+                    return;
+                case UINT8:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = 0xff & buffer.get(pos);
+                    }
+                    return;
+                case INT16:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getShort(pos);
+                    }
+                    return;
+                case UINT16:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = 0xffff & buffer.getShort(pos);
+                    }
+                    return;
+                case INT32:
+                case UINT32:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getInt(pos);
+                    }
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        for (int pos = start; pos < end; pos = nextValuePos(pos)) {
+            dst[i++] = getInt(pos);
+        }
+    }
+
+    private void unpackLongs(int start, int end, int stride, long[] dst) throws Exception {
+        int i = 0;
+        if (stride > 0) {
+            switch (Format.valueOf(buffer.get(start))) {
+                case INT8:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.get(pos);
+                    }
+                    return;
+                case UINT8:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = 0xff & buffer.get(pos);
+                    }
+                    return;
+                case INT16:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getShort(pos);
+                    }
+                    return;
+                case UINT16:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = 0xffff & buffer.getShort(pos);
+                    }
+                    return;
+                case INT32:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getInt(pos);
+                    }
+                    return;
+                case UINT32:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = 0xffffffffL & buffer.getInt(pos);
+                    }
+                    return;
+                case INT64:
+                case UINT64:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getLong(pos);
+                    }
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        for (int pos = start; pos < end; pos = nextValuePos(pos)) {
+            dst[i++] = getLong(pos);
+        }
+    }
+
+    private void unpackDoubles(int start, int end, int stride, double[] dst) throws Exception {
+        int i = 0;
+        if (stride > 0) {
+            switch (Format.valueOf(buffer.get(start))) {
+                case FLOAT32:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getFloat(pos);
+                    }
+                    return;
+                case FLOAT64:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getDouble(pos);
+                    }
+                    return;
+                case INT32:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getInt(pos);
+                    }
+                    return;
+                case INT64:
+                case UINT64:
+                    for (int pos = start + 1; pos < end; pos += stride) {
+                        dst[i++] = buffer.getLong(pos);
+                    }
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        for (int pos = start; pos < end; pos = nextValuePos(pos)) {
+            dst[i++] = getDouble(pos);
+        }
+    }
+
+    /**
+     * Finds the values of all paths in mask in one pass over the root map, descending only into
+     * maps that lie on a mask path. positions[i] is set to the value position of path i, or -1 if
+     * the path is absent.
+     */
+    public void locate(FieldMask mask, int[] positions) throws Exception {
+        for (int i = 0; i < mask.size(); i++) {
+            positions[i] = -1;
+        }
+        resetPostion();
+        int len = enterMap();
+        if (len < 0) {
+            throw new FormatException(Format.valueOf(buffer.get()));
+        }
+        locateInMap(len, mask.root(), positions);
+    }
+
+    private void locateInMap(int len, FieldMask.Node node, int[] positions) throws Exception {
+        int end = buffer.position() + len;
+        while (buffer.position() < end) {
+            int strLen = unpackKeyLength();
+            int keyPos = buffer.position();
+            buffer.skip(strLen);
+            FieldMask.Node child = node.child(buffer.array(), keyPos, strLen);
+            if (child == null) {
+                skipValue();
+                continue;
+            }
+
+            int pos = buffer.position();
+            for (int i : child.indexes) {
+                positions[i] = pos;
+            }
+            int mapLen;
+            if (child.children.length > 0 && (mapLen = enterMap()) >= 0) {
+                locateInMap(mapLen, child, positions);
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    /**
+     * Reads the map header at the buffer position and returns the map length, or returns -1 and
+     * leaves the position unchanged if the value is not a map.
+     */
+    int enterMap() {
+        byte b = buffer.get(buffer.position());
+        switch (Format.valueOf(b)) {
+            case FIXMAP:
+                buffer.skip(1);
+                return b & 0x0f;
+            case MAP16:
+                buffer.skip(1);
+                return length(buffer.getShort());
+            case MAP32:
+                buffer.skip(1);
+                return buffer.getInt();
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Reads the array header at the buffer position and returns the array length, or returns -1 and
+     * leaves the position unchanged if the value is not an array.
+     */
+    int enterArray() {
+        byte b = buffer.get(buffer.position());
+        switch (Format.valueOf(b)) {
+            case FIXARRAY:
+                buffer.skip(1);
+                return b & 0x0f;
+            case ARRAY16:
+                buffer.skip(1);
+                return length(buffer.getShort());
+            case ARRAY32:
+                buffer.skip(1);
+                return buffer.getInt();
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the payload position of the string at pos in the high 32 bits and its byte length in
+     * the low 32 bits, or -1 if the value is not a string.
+     */
+    long stringSpan(int pos) {
+        int len;
+        byte b = buffer.get(pos++);
+        switch (Format.valueOf(b)) {
+            case FIXSTR:
+                len = b & 0x1f;
+                break;
+            case STR8:
+                len = length(buffer.get(pos));
+                pos += 1;
+                break;
+            case STR16:
+                len = length(buffer.getShort(pos));
+                pos += 2;
+                break;
+            case STR32:
+                len = buffer.getInt(pos);
+                pos += 4;
+                break;
+            default:
+                return -1;
+        }
+        return ((long) pos << 32) | (len & 0xffffffffL);
+    }
+
+    /**
+     * Compares the string at pos with the UTF-8 bytes s as unsigned bytes, without decoding it.
+     *
+     * @return the comparison result, or Integer.MIN_VALUE if the value is not a string
+     */
+    int compareString(int pos, byte[] s) {
+        long span = stringSpan(pos);
+        if (span < 0) {
+            return Integer.MIN_VALUE;
+        }
+
+        byte[] bs = buffer.array();
+        int from = (int) (span >>> 32);
+        int len = (int) span;
+        int n = Math.min(len, s.length);
+        for (int i = 0; i < n; i++) {
+            int c = (bs[from + i] & 0xff) - (s[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - s.length;
+    }
+
+    /**
+     * Returns a scratch int array of at least n elements, reused across calls.
+     */
+    int[] positions(int n) {
+        if (positions.length < n) {
+            positions = new int[n];
+        }
+        return positions;
+    }
+
+    public int getMapValuePos(byte[] key, int fromIndex, int endIndex) throws Exception {
+        int len;
+        byte b = buffer.get();
+        Format f = Format.valueOf(b);
+        switch (f) {
+            case FIXMAP: {
+                len = b & 0x0f;
+                break;
+            }
+            case MAP16: {
+                len = length(buffer.getShort());
+                break;
+            }
+            case MAP32: {
+                len = buffer.getInt();
+                break;
+            }
+            default:
+                throw new FormatException(f);
+        }
+
+        int strLen = 0;
+        int comp = 0;
+        int end = buffer.position() + len;
+        while (buffer.position() < end) {
+            //key
+            b = buffer.get();
+            f = Format.valueOf(b);
+            switch (f) {
+                case FIXSTR:
+                    strLen = b & 0x1f;
+                    break;
+                case STR8:
+                    strLen = length(buffer.get());
+                    break;
+                case STR16:
+                    strLen = length(buffer.getShort());
+                    break;
+                case STR32:
+                    strLen = buffer.getInt();
+                    break;
+                default:
+                    throw new FormatException(f);
+            }
+
+            if (strLen > 0) {
+                buffer.getBytes(ensureTmpBytesCapacity(strLen), strLen);
+            }
+
+            keysCompared++;
+            if (Utils.bytesEquals(tmpBytes, 0, strLen, key, fromIndex, endIndex)) {
+                return buffer.position();
+            } else {
+                valuesSkipped++;
+                skipValue();
+            }
+        }
+
+        return -1;
+    }
+
+    public void skipValue() throws Exception {
+        int skiplen = 0;
+        byte b = buffer.get();
+        Format f = Format.valueOf(b);
+        switch (f) {
+            case FIXSTR:
+                skiplen = b & 0x1f;
+                break;
+            case FIXMAP:
+                skiplen = b & 0x0f;
+                break;
+            case FIXARRAY:
+                skiplen = b & 0x0f;
+                break;
+            case STR8:
+            case BIN8:
+                skiplen = length(buffer.get());
                 break;
             case STR16:
             case BIN16:
@@ -513,6 +1513,30 @@ public final class Deserializer implements Serializable {
             case BOOLEAN:
                 skiplen = 0;
                 break;
+            case FIXEXT1:
+                skiplen = 1 + 1;
+                break;
+            case FIXEXT2:
+                skiplen = 1 + 2;
+                break;
+            case FIXEXT4:
+                skiplen = 1 + 4;
+                break;
+            case FIXEXT8:
+                skiplen = 1 + 8;
+                break;
+            case FIXEXT16:
+                skiplen = 1 + 16;
+                break;
+            case EXT8:
+                skiplen = 1 + length(buffer.get());
+                break;
+            case EXT16:
+                skiplen = 1 + length(buffer.getShort());
+                break;
+            case EXT32:
+                skiplen = 1 + buffer.getInt();
+                break;
             default:
                 throw new FormatException(f);
         }
@@ -550,11 +1574,112 @@ public final class Deserializer implements Serializable {
         }
     }
 
+    /**
+     * Unpacks only the branches of the root container selected by mask, skipping everything else by
+     * its byte length. A mask path continues through arrays into each of their elements.
+     *
+     * @return Map or List holding the selected branches
+     */
+    public Object unpackProjection(FieldMask mask) throws Exception {
+        resetPostion();
+        Object v = unpackProjectedValue(mask.root());
+        if (v == null) {
+            throw new FormatException(Format.valueOf(buffer.get(dataStart)));
+        }
+        return v;
+    }
+
+    /**
+     * Unpacks the container at the buffer position through node, or skips the value and returns
+     * null if it is not a container.
+     */
+    private Object unpackProjectedValue(FieldMask.Node node) throws Exception {
+        int len;
+        byte b = buffer.get();
+        Format f = Format.valueOf(b);
+        switch (f) {
+            case FIXMAP:
+                len = b & 0x0f;
+                return unpackProjectedMap(len, node);
+            case MAP16:
+                len = length(buffer.getShort());
+                return unpackProjectedMap(len, node);
+            case MAP32:
+                len = buffer.getInt();
+                return unpackProjectedMap(len, node);
+            case FIXARRAY:
+                len = b & 0x0f;
+                return unpackProjectedArray(len, node);
+            case ARRAY16:
+                len = length(buffer.getShort());
+                return unpackProjectedArray(len, node);
+            case ARRAY32:
+                len = buffer.getInt();
+                return unpackProjectedArray(len, node);
+            default:
+                buffer.position(buffer.position() - 1);
+                skipValue();
+                return null;
+        }
+    }
+
+    private Map<String, Object> unpackProjectedMap(int len, FieldMask.Node node) throws Exception {
+        int end = buffer.position() + len;
+        Map<String, Object> map = new HashMap<>();
+        while (buffer.position() < end) {
+            int strLen = unpackKeyLength();
+            int keyPos = buffer.position();
+            buffer.skip(strLen);
+            FieldMask.Node child = node.child(buffer.array(), keyPos, strLen);
+            if (child == null) {
+                skipValue();
+                continue;
+            }
+
+            Object value = child.isLeaf() ? unpackValue() : unpackProjectedValue(child);
+            if (value != null || child.isLeaf()) {
+                map.put(strLen > 0 ? buffer.getString(keyPos, strLen) : "", value);
+            }
+        }
+
+        return map;
+    }
+
+    private List<Object> unpackProjectedArray(int len, FieldMask.Node node) throws Exception {
+        int end = buffer.position() + len;
+        List<Object> list = new ArrayList<>();
+        while (buffer.position() < end) {
+            Object value = unpackProjectedValue(node);
+            if (value != null) {
+                list.add(value);
+            }
+        }
+
+        return list;
+    }
+
+    private int unpackKeyLength() throws Exception {
+        byte b = buffer.get();
+        Format f = Format.valueOf(b);
+        switch (f) {
+            case FIXSTR:
+                return b & 0x1f;
+            case STR8:
+                return length(buffer.get());
+            case STR16:
+                return length(buffer.getShort());
+            case STR32:
+                return buffer.getInt();
+            default:
+                throw new FormatException(f);
+        }
+    }
+
     private Object unpackValue() throws Exception {
         return unpackValue(buffer.position());
     }
 
-    private Object unpackValue(int pos) throws Exception {
+    Object unpackValue(int pos) throws Exception {
         int len;
         buffer.position(pos);
         byte b = buffer.get();
@@ -626,11 +1751,82 @@ public final class Deserializer implements Serializable {
             case ARRAY32:
                 len = buffer.getInt();
                 return unpackArray(len);
+            case FIXEXT1:
+                return unpackExtension(1);
+            case FIXEXT2:
+                return unpackExtension(2);
+            case FIXEXT4:
+                return unpackExtension(4);
+            case FIXEXT8:
+                return unpackExtension(8);
+            case FIXEXT16:
+                return unpackExtension(16);
+            case EXT8:
+                len = length(buffer.get());
+                return unpackExtension(len);
+            case EXT16:
+                len = length(buffer.getShort());
+                return unpackExtension(len);
+            case EXT32:
+                len = buffer.getInt();
+                return unpackExtension(len);
             default:
                 throw new FormatException(f);
         }
     }
 
+    /**
+     * Unpacks an extension payload of len bytes, the buffer is at the type byte.
+     */
+    private Object unpackExtension(int len) throws Exception {
+        byte type = buffer.get();
+        int n;
+        boolean bigEndian;
+        switch (type) {
+            case Code.EXT_INT32_ARRAY: {
+                bigEndian = Code.getBigEndian(buffer.get());
+                n = (len - 1) / 4;
+                int[] v = new int[n];
+                buffer.getInts(buffer.position(), bigEndian, v, 0, n);
+                buffer.skip(n * 4);
+                return v;
+            }
+            case Code.EXT_INT64_ARRAY: {
+                bigEndian = Code.getBigEndian(buffer.get());
+                n = (len - 1) / 8;
+                long[] v = new long[n];
+                buffer.getLongs(buffer.position(), bigEndian, v, 0, n);
+                buffer.skip(n * 8);
+                return v;
+            }
+            case Code.EXT_FLOAT32_ARRAY: {
+                bigEndian = Code.getBigEndian(buffer.get());
+                n = (len - 1) / 4;
+                float[] v = new float[n];
+                buffer.getFloats(buffer.position(), bigEndian, v, 0, n);
+                buffer.skip(n * 4);
+                return v;
+            }
+            case Code.EXT_FLOAT64_ARRAY: {
+                bigEndian = Code.getBigEndian(buffer.get());
+                n = (len - 1) / 8;
+                double[] v = new double[n];
+                buffer.getDoubles(buffer.position(), bigEndian, v, 0, n);
+                buffer.skip(n * 8);
+                return v;
+            }
+            default: {
+                int pos = buffer.position();
+                buffer.skip(len);
+                ExtensionCodec<?> codec = extensions.forType(type);
+                if (codec == null) {
+                    return new ExtensionValue(type, buffer.getBytes(pos, len));
+                }
+                return codec.unpack(buffer, pos, len);
+            }
+        }
+    }
+
     private Map<String, Object> unpackMap(int len) throws Exception {
         int strLen = 0;
         int end = buffer.position() + len;
@@ -672,6 +1868,115 @@ public final class Deserializer implements Serializable {
         return map;
     }
 
+    /**
+     * Unpacks the root container like {@link #unpackJsonObject()}, decoding a large root array on
+     * pool, see {@link #getList(String, ForkJoinPool)}.
+     */
+    public Object unpackJsonObject(ForkJoinPool pool) throws Exception {
+        resetPostion();
+        int len = enterArray();
+        if (len < 0) {
+            return unpackJsonObject();
+        }
+        return unpackArray(len, pool);
+    }
+
+    /**
+     * Unpacks the array at key, decoding its elements on pool if it is large. A first pass finds
+     * the position of every element by skipping over it, then ranges of elements are decoded
+     * concurrently, each by its own Deserializer over the same bytes, into a pre-sized list.
+     */
+    public List<Object> getList(String key, ForkJoinPool pool) throws Exception {
+        int pos = getValuePos(key);
+        if (pos < 0) {
+            throw new NotFoundException(key);
+        }
+        int end = enterArray(pos);
+        return unpackArray(end - buffer.position(), pool);
+    }
+
+    private List<Object> unpackArray(int len, ForkJoinPool pool) throws Exception {
+        int start = buffer.position();
+        int end = start + len;
+        int[] bounds = new int[64];
+        int n = 0;
+        while (buffer.position() < end) {
+            if (n == bounds.length) {
+                bounds = Arrays.copyOf(bounds, n * 2);
+            }
+            bounds[n++] = buffer.position();
+            skipValue();
+        }
+        if (n < PARALLEL_THRESHOLD) {
+            buffer.position(start);
+            return unpackArray(len);
+        }
+
+        Object[] values = new Object[n];
+        int rangeSize = Math.max(MIN_PARALLEL_RANGE, n / (pool.getParallelism() * 4));
+        try {
+            pool.invoke(new ArrayTask(this, bounds, values, 0, n, rangeSize));
+        } catch (CompletionException e) {
+            Throwable cause = e;
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        buffer.position(end);
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    /**
+     * Returns a new Deserializer over the same bytes and with the same settings.
+     */
+    private Deserializer fork() {
+        Deserializer deser = new Deserializer();
+        deser.initRaw(buffer.array(), buffer.offset(), buffer.end(), buffer.bigEndian());
+        deser.delimiter = delimiter;
+        deser.extensions = extensions;
+        return deser;
+    }
+
+    /**
+     * Decodes the elements starting at bounds[from, to) into values.
+     */
+    private static final class ArrayTask extends RecursiveAction {
+        private final Deserializer parent;
+        private final int[] bounds;
+        private final Object[] values;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+
+        ArrayTask(Deserializer parent, int[] bounds, Object[] values, int from, int to, int rangeSize) {
+            this.parent = parent;
+            this.bounds = bounds;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > rangeSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ArrayTask(parent, bounds, values, from, mid, rangeSize),
+                        new ArrayTask(parent, bounds, values, mid, to, rangeSize));
+                return;
+            }
+            Deserializer deser = parent.fork();
+            try {
+                for (int i = from; i < to; i++) {
+                    values[i] = deser.unpackValue(bounds[i]);
+                }
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+
     private List<Object> unpackArray(int len) throws Exception {
         int strLen = 0;
         int end = buffer.position() + len;
@@ -685,4 +1990,211 @@ public final class Deserializer implements Serializable {
 
         return list;
     }
+
+    /**
+     * Unpacks the root container into a {@link CompactMap} or {@link CompactList}.
+     * <p>
+     * Containers are sized from a cheap counting pass over their byte length, numbers and booleans
+     * are stored unboxed.
+     *
+     * @return CompactMap or CompactList
+     */
+    public CompactContainer unpackCompact() throws Exception {
+        int len;
+        byte b = buffer.get();
+        Format f = Format.valueOf(b);
+        switch (f) {
+            case FIXMAP:
+                len = b & 0x0f;
+                return unpackCompactMap(len);
+            case MAP16:
+                len = length(buffer.getShort());
+                return unpackCompactMap(len);
+            case MAP32:
+                len = buffer.getInt();
+                return unpackCompactMap(len);
+            case FIXARRAY:
+                len = b & 0x0f;
+                return unpackCompactList(len);
+            case ARRAY16:
+                len = length(buffer.getShort());
+                return unpackCompactList(len);
+            case ARRAY32:
+                len = buffer.getInt();
+                return unpackCompactList(len);
+            default:
+                throw new FormatException(f);
+        }
+    }
+
+    private CompactMap unpackCompactMap(int len) throws Exception {
+        int start = buffer.position();
+        int end = start + len;
+        int count = 0;
+        while (buffer.position() < end) {
+            skipValue();
+            skipValue();
+            count++;
+        }
+        buffer.position(start);
+
+        CompactMap map = new CompactMap(count);
+        while (buffer.position() < end) {
+            unpackCompactValue(map, map.add(unpackKey()));
+        }
+
+        return map;
+    }
+
+    private CompactList unpackCompactList(int len) throws Exception {
+        int start = buffer.position();
+        int end = start + len;
+        int count = 0;
+        while (buffer.position() < end) {
+            skipValue();
+            count++;
+        }
+        buffer.position(start);
+
+        CompactList list = new CompactList(count);
+        while (buffer.position() < end) {
+            unpackCompactValue(list, list.add());
+        }
+
+        return list;
+    }
+
+    private void unpackCompactValue(CompactContainer c, int i) throws Exception {
+        int len;
+        byte b = buffer.get();
+        Format f = Format.valueOf(b);
+        switch (f) {
+            case FIXSTR:
+                len = b & 0x1f;
+                c.setRef(i, ValueType.STRING, buffer.getString(len));
+                break;
+            case STR8:
+                len = length(buffer.get());
+                c.setRef(i, ValueType.STRING, buffer.getString(len));
+                break;
+            case STR16:
+                len = length(buffer.getShort());
+                c.setRef(i, ValueType.STRING, buffer.getString(len));
+                break;
+            case STR32:
+                len = buffer.getInt();
+                c.setRef(i, ValueType.STRING, buffer.getString(len));
+                break;
+            case BIN8:
+                len = length(buffer.get());
+                c.setRef(i, ValueType.BINARY, buffer.getBytes(len));
+                break;
+            case BIN16:
+                len = length(buffer.getShort());
+                c.setRef(i, ValueType.BINARY, buffer.getBytes(len));
+                break;
+            case BIN32:
+                len = buffer.getInt();
+                c.setRef(i, ValueType.BINARY, buffer.getBytes(len));
+                break;
+            case POSFIXINT:
+                c.setLong(i, b & 0x7f);
+                break;
+            case NEGFIXINT:
+                c.setLong(i, -(b & 0x1f));
+                break;
+            case INT8:
+                c.setLong(i, buffer.get());
+                break;
+            case UINT8:
+                c.setLong(i, 0xff & buffer.get());
+                break;
+            case INT16:
+                c.setLong(i, buffer.getShort());
+                break;
+            case UINT16:
+                c.setLong(i, 0xffff & buffer.getShort());
+                break;
+            case INT32:
+                c.setLong(i, buffer.getInt());
+                break;
+            case UINT32:
+                c.setLong(i, 0xffffffffL & buffer.getInt());
+                break;
+            case UINT64:
+            case INT64:
+                c.setLong(i, buffer.getLong());
+                break;
+            case FLOAT32:
+                c.setDouble(i, buffer.getFloat());
+                break;
+            case FLOAT64:
+                c.setDouble(i, buffer.getDouble());
+                break;
+            case BOOLEAN:
+                c.setBoolean(i, b == Code.TRUE);
+                break;
+            case NIL:
+                c.setNil(i);
+                break;
+            case FIXMAP:
+                len = b & 0x0f;
+                c.setRef(i, ValueType.MAP, unpackCompactMap(len));
+                break;
+            case MAP16:
+                len = length(buffer.getShort());
+                c.setRef(i, ValueType.MAP, unpackCompactMap(len));
+                break;
+            case MAP32:
+                len = buffer.getInt();
+                c.setRef(i, ValueType.MAP, unpackCompactMap(len));
+                break;
+            case FIXARRAY:
+                len = b & 0x0f;
+                c.setRef(i, ValueType.ARRAY, unpackCompactList(len));
+                break;
+            case ARRAY16:
+                len = length(buffer.getShort());
+                c.setRef(i, ValueType.ARRAY, unpackCompactList(len));
+                break;
+            case ARRAY32:
+                len = buffer.getInt();
+                c.setRef(i, ValueType.ARRAY, unpackCompactList(len));
+                break;
+            case FIXEXT1:
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(1));
+                break;
+            case FIXEXT2:
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(2));
+                break;
+            case FIXEXT4:
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(4));
+                break;
+            case FIXEXT8:
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(8));
+                break;
+            case FIXEXT16:
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(16));
+                break;
+            case EXT8:
+                len = length(buffer.get());
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(len));
+                break;
+            case EXT16:
+                len = length(buffer.getShort());
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(len));
+                break;
+            case EXT32:
+                len = buffer.getInt();
+                c.setRef(i, ValueType.EXTENSION, unpackExtension(len));
+                break;
+            default:
+                throw new FormatException(f);
+        }
+    }
+
+    String unpackKey() throws Exception {
+        int strLen = unpackKeyLength();
+        return strLen > 0 ? buffer.getString(strLen) : "";
+    }
 }
@@ -0,0 +1,46 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Converts between a java type and the payload of an extension value.
+ * <p>
+ * Application types use 0 to 127, negative types are reserved for the predefined ones.
+ *
+ * @param <T> java type handled by this codec
+ */
+public interface ExtensionCodec<T> {
+
+    byte getType();
+
+    Class<T> getJavaType();
+
+    /**
+     * Returns the number of payload bytes {@link #pack} will write for v.
+     */
+    int getPayloadLength(T v);
+
+    /**
+     * Writes exactly {@link #getPayloadLength} bytes of v at the buffer position.
+     */
+    void pack(T v, BytesBuffer buffer);
+
+    /**
+     * Reads a value from the len payload bytes starting at pos, without moving the buffer position.
+     */
+    T unpack(BytesBuffer buffer, int pos, int len);
+}
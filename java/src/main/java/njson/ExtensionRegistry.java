@@ -0,0 +1,205 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Extension codecs looked up by extension type on read and by java class on write.
+ * <p>
+ * A new registry contains the built-in codecs for {@link Instant} (timestamp), {@link BigDecimal}
+ * (decimal) and {@link UUID}. Application codecs take non-negative types, negative ones are reserved
+ * for the format. Register them before the registry is shared between threads. {@link #DEFAULT}
+ * holds only the built-ins and cannot be changed.
+ */
+public final class ExtensionRegistry {
+    public static final ExtensionRegistry DEFAULT = new ExtensionRegistry(true);
+
+    private final ExtensionCodec<?>[] byType = new ExtensionCodec<?>[256];
+    private final Map<Class<?>, ExtensionCodec<?>> byClass = new HashMap<>();
+    private final boolean frozen;
+
+    public ExtensionRegistry() {
+        this(false);
+    }
+
+    private ExtensionRegistry(boolean frozen) {
+        add(new TimestampCodec());
+        add(new DecimalCodec());
+        add(new UUIDCodec());
+        this.frozen = frozen;
+    }
+
+    public ExtensionRegistry register(ExtensionCodec<?> codec) {
+        if (frozen) {
+            throw new UnsupportedOperationException("default extension registry is read only");
+        }
+        if (codec.getType() < 0) {
+            throw new IllegalArgumentException(String.format("extension type %d is reserved", codec.getType()));
+        }
+        add(codec);
+        return this;
+    }
+
+    private void add(ExtensionCodec<?> codec) {
+        byType[codec.getType() & 0xff] = codec;
+        byClass.put(codec.getJavaType(), codec);
+    }
+
+    public ExtensionCodec<?> forType(byte type) {
+        return byType[type & 0xff];
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> ExtensionCodec<T> forClass(Class<T> cls) {
+        return (ExtensionCodec<T>) byClass.get(cls);
+    }
+
+    /**
+     * Timestamp in the 32, 64 or 96 bit layout, whichever is smallest:
+     * uint32 seconds; uint64 of nanos(30 bits) and seconds(34 bits); uint32 nanos and int64 seconds.
+     */
+    static final class TimestampCodec implements ExtensionCodec<Instant> {
+        @Override
+        public byte getType() {
+            return Code.EXT_TIMESTAMP;
+        }
+
+        @Override
+        public Class<Instant> getJavaType() {
+            return Instant.class;
+        }
+
+        @Override
+        public int getPayloadLength(Instant v) {
+            long sec = v.getEpochSecond();
+            if ((sec >>> 34) == 0) {
+                return (v.getNano() == 0 && (sec >>> 32) == 0) ? 4 : 8;
+            }
+            return 12;
+        }
+
+        @Override
+        public void pack(Instant v, BytesBuffer buffer) {
+            long sec = v.getEpochSecond();
+            int nano = v.getNano();
+            switch (getPayloadLength(v)) {
+                case 4:
+                    buffer.putInt((int) sec);
+                    break;
+                case 8:
+                    buffer.putLong(((long) nano << 34) | sec);
+                    break;
+                default:
+                    buffer.putInt(nano);
+                    buffer.putLong(sec);
+                    break;
+            }
+        }
+
+        @Override
+        public Instant unpack(BytesBuffer buffer, int pos, int len) {
+            switch (len) {
+                case 4:
+                    return Instant.ofEpochSecond(0xffffffffL & buffer.getInt(pos));
+                case 8: {
+                    long v = buffer.getLong(pos);
+                    return Instant.ofEpochSecond(v & 0x3ffffffffL, v >>> 34);
+                }
+                case 12:
+                    return Instant.ofEpochSecond(buffer.getLong(pos + 4), 0xffffffffL & buffer.getInt(pos));
+                default:
+                    throw new FormatException(String.format("timestamp length %d unsupport", len));
+            }
+        }
+    }
+
+    /**
+     * Exact decimal: int32 scale followed by the unscaled value, as an int64 when it fits and as
+     * big-endian two's complement bytes otherwise.
+     */
+    static final class DecimalCodec implements ExtensionCodec<BigDecimal> {
+        @Override
+        public byte getType() {
+            return Code.EXT_DECIMAL;
+        }
+
+        @Override
+        public Class<BigDecimal> getJavaType() {
+            return BigDecimal.class;
+        }
+
+        @Override
+        public int getPayloadLength(BigDecimal v) {
+            BigInteger unscaled = v.unscaledValue();
+            return unscaled.bitLength() < 64 ? 4 + 8 : 4 + unscaled.bitLength() / 8 + 1;
+        }
+
+        @Override
+        public void pack(BigDecimal v, BytesBuffer buffer) {
+            BigInteger unscaled = v.unscaledValue();
+            buffer.putInt(v.scale());
+            if (unscaled.bitLength() < 64) {
+                buffer.putLong(unscaled.longValue());
+            } else {
+                buffer.put(unscaled.toByteArray());
+            }
+        }
+
+        @Override
+        public BigDecimal unpack(BytesBuffer buffer, int pos, int len) {
+            int scale = buffer.getInt(pos);
+            if (len == 4 + 8) {
+                return BigDecimal.valueOf(buffer.getLong(pos + 4), scale);
+            }
+            return new BigDecimal(new BigInteger(buffer.getBytes(pos + 4, len - 4)), scale);
+        }
+    }
+
+    static final class UUIDCodec implements ExtensionCodec<UUID> {
+        @Override
+        public byte getType() {
+            return Code.EXT_UUID;
+        }
+
+        @Override
+        public Class<UUID> getJavaType() {
+            return UUID.class;
+        }
+
+        @Override
+        public int getPayloadLength(UUID v) {
+            return 16;
+        }
+
+        @Override
+        public void pack(UUID v, BytesBuffer buffer) {
+            buffer.putLong(v.getMostSignificantBits());
+            buffer.putLong(v.getLeastSignificantBits());
+        }
+
+        @Override
+        public UUID unpack(BytesBuffer buffer, int pos, int len) {
+            return new UUID(buffer.getLong(pos), buffer.getLong(pos + 8));
+        }
+    }
+}
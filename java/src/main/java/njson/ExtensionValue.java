@@ -0,0 +1,61 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Extension value whose type has no registered codec, kept as type and payload so it can be
+ * packed again unchanged.
+ */
+public final class ExtensionValue implements Serializable {
+    private final byte type;
+    private final byte[] data;
+
+    public ExtensionValue(byte type, byte[] data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ExtensionValue)) {
+            return false;
+        }
+        ExtensionValue other = (ExtensionValue) o;
+        return type == other.type && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type + Arrays.hashCode(data);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExtensionValue(type:%d,len:%d)", type, data.length);
+    }
+}
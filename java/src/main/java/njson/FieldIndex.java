@@ -0,0 +1,425 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A persistent sorted index from the value of one path to the offsets of the records of a
+ * {@link RecordLogWriter record log} holding it.
+ * <pre>
+ *     FieldIndex index = FieldIndex.create(log, indexFile, "user.id");
+ *     ...
+ *     index.update();
+ *     for (long offset : index.lookup(42L)) {
+ *         deser.init(reader.readAt(offset));
+ *     }
+ * </pre>
+ * Integer, float and string values are indexed; records where the path is missing or holds
+ * another type are not. Numbers are ordered by value regardless of format, strings by their
+ * UTF-8 bytes, and all numbers sort before all strings. Lookups binary search the entries, which
+ * are kept in memory.
+ * <p>
+ * {@link #update()} indexes the records appended since the last update, merges them into the
+ * sorted entries and rewrites the index file; its cost is linear in the size of the index, so
+ * call it for batches of appends rather than for every record.
+ * <p>
+ * File layout: magic "NJFX", {@link Code#SER_VERSION}, the path, the number of indexed records,
+ * the log offset after the last of them, the entry count and the entries in order, each a type
+ * byte, the value (int64, float64 bits, or int32 length and UTF-8 bytes) and the record offset.
+ */
+public final class FieldIndex {
+    private static final byte[] MAGIC = new byte[]{'N', 'J', 'F', 'X'};
+    private static final byte LONG = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte STRING = 2;
+
+    private final Path log;
+    private final Path file;
+    private final String path;
+    private final FieldMask mask;
+    private volatile long recordCount;
+    private long logOffset = RecordLogWriter.HEADER_LENGTH;
+    /**
+     * The sorted entries; {@link #update()} builds a new instance and publishes it here, so
+     * lookups never see a partly merged one.
+     */
+    private volatile Entries entries = new Entries(0);
+
+    private FieldIndex(Path log, Path file, String path) {
+        this.log = log;
+        this.file = file;
+        this.path = path;
+        this.mask = FieldMask.of(path);
+    }
+
+    /**
+     * Builds an index of path over all records of log and writes it to file.
+     */
+    public static FieldIndex create(Path log, Path file, String path) throws Exception {
+        FieldIndex index = new FieldIndex(log, file, path);
+        index.update();
+        return index;
+    }
+
+    /**
+     * Loads an index written by {@link #create(Path, Path, String)}. Records appended to the log
+     * since are not visible until {@link #update()}.
+     */
+    public static FieldIndex open(Path log, Path file) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new FormatException("not a field index");
+            }
+            byte version = in.readByte();
+            if (version != Code.SER_VERSION) {
+                throw new FormatException(String.format("field index version %d unsupport", version));
+            }
+            FieldIndex index = new FieldIndex(log, file, in.readUTF());
+            index.recordCount = in.readLong();
+            index.logOffset = in.readLong();
+            int n = in.readInt();
+            Entries entries = new Entries(n);
+            for (int i = 0; i < n; i++) {
+                byte type = in.readByte();
+                entries.types[i] = type;
+                if (type == STRING) {
+                    byte[] s = new byte[in.readInt()];
+                    in.readFully(s);
+                    entries.strings[i] = s;
+                } else {
+                    entries.numbers[i] = in.readLong();
+                }
+                entries.offsets[i] = in.readLong();
+            }
+            entries.size = n;
+            index.entries = entries;
+            return index;
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of log records covered by the index.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return entries.size;
+    }
+
+    /**
+     * Indexes the records appended to the log since the last update and rewrites the index file.
+     *
+     * @return the number of entries added
+     */
+    public synchronized int update() throws Exception {
+        Entries added = new Entries(16);
+        Deserializer deser = new Deserializer();
+        int[] positions = new int[1];
+        long count = recordCount;
+        long end = logOffset;
+        try (RecordLogReader reader = new RecordLogReader(log)) {
+            reader.seek(recordCount, logOffset);
+            byte[] record;
+            long offset = reader.getPosition();
+            while ((record = reader.next()) != null) {
+                deser.init(record);
+                deser.locate(mask, positions);
+                added.add(deser, positions[0], offset);
+                count++;
+                offset = reader.getPosition();
+                end = offset;
+            }
+        }
+
+        if (added.size > 0) {
+            added.sort();
+            entries = entries.merge(added);
+        }
+        recordCount = count;
+        logOffset = end;
+        write();
+        return added.size;
+    }
+
+    public long[] lookup(long value) {
+        Entries e = entries;
+        return e.slice(e.lowerBound(LONG, value, null, false), e.lowerBound(LONG, value, null, true));
+    }
+
+    public long[] lookup(double value) {
+        Entries e = entries;
+        long bits = Double.doubleToLongBits(value);
+        return e.slice(e.lowerBound(DOUBLE, bits, null, false), e.lowerBound(DOUBLE, bits, null, true));
+    }
+
+    public long[] lookup(String value) {
+        Entries e = entries;
+        byte[] s = value.getBytes(StandardCharsets.UTF_8);
+        return e.slice(e.lowerBound(STRING, 0, s, false), e.lowerBound(STRING, 0, s, true));
+    }
+
+    /**
+     * Returns the record offsets of the numeric values from from to to, inclusive, in value order.
+     */
+    public long[] range(long from, long to) {
+        Entries e = entries;
+        return e.slice(e.lowerBound(LONG, from, null, false), e.lowerBound(LONG, to, null, true));
+    }
+
+    public long[] range(double from, double to) {
+        Entries e = entries;
+        return e.slice(e.lowerBound(DOUBLE, Double.doubleToLongBits(from), null, false),
+                e.lowerBound(DOUBLE, Double.doubleToLongBits(to), null, true));
+    }
+
+    public long[] range(String from, String to) {
+        Entries e = entries;
+        return e.slice(e.lowerBound(STRING, 0, from.getBytes(StandardCharsets.UTF_8), false),
+                e.lowerBound(STRING, 0, to.getBytes(StandardCharsets.UTF_8), true));
+    }
+
+    private static int compare(byte ta, long a, byte[] sa, byte tb, long b, byte[] sb) {
+        if (ta == STRING || tb == STRING) {
+            if (ta != tb) {
+                return ta == STRING ? 1 : -1;
+            }
+            return BytesComparator.compare(sa, 0, sa.length, sb, 0, sb.length);
+        }
+        if (ta == LONG && tb == LONG) {
+            return Long.compare(a, b);
+        }
+        if (ta == DOUBLE && tb == DOUBLE) {
+            return Double.compare(Double.longBitsToDouble(a), Double.longBitsToDouble(b));
+        }
+        return ta == LONG ? compare(a, Double.longBitsToDouble(b)) : -compare(b, Double.longBitsToDouble(a));
+    }
+
+    /**
+     * Compares a long and a double by their exact values, without rounding the long to a double.
+     * -0.0 sorts just below 0 and NaN above all numbers, as in {@link Double#compare(double, double)}.
+     */
+    static int compare(long l, double d) {
+        if (Double.isNaN(d) || d >= 0x1p63) {
+            return -1;
+        }
+        if (d < -0x1p63) {
+            return 1;
+        }
+        long whole = (long) d;
+        if (l != whole) {
+            return Long.compare(l, whole);
+        }
+        double fraction = d - whole;
+        if (fraction != 0) {
+            return fraction > 0 ? -1 : 1;
+        }
+        return Double.doubleToRawLongBits(d) == Double.doubleToRawLongBits(-0.0) ? 1 : 0;
+    }
+
+    /**
+     * Entries in parallel arrays. An instance is filled and sorted by the thread that creates it
+     * and not modified after it is published.
+     */
+    private static final class Entries {
+        int size;
+        byte[] types;
+        /**
+         * long values, or the raw bits of double values
+         */
+        long[] numbers;
+        byte[][] strings;
+        long[] offsets;
+
+        Entries(int capacity) {
+            types = new byte[capacity];
+            numbers = new long[capacity];
+            strings = new byte[capacity][];
+            offsets = new long[capacity];
+        }
+
+        long[] slice(int from, int to) {
+            return from >= to ? new long[0] : Arrays.copyOfRange(offsets, from, to);
+        }
+
+        /**
+         * Returns the first entry that is greater than or equal to the value, or greater if after.
+         */
+        int lowerBound(byte type, long number, byte[] string, boolean after) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = FieldIndex.compare(types[mid], numbers[mid], strings[mid], type, number, string);
+                if (c < 0 || (after && c == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int compare(int i, Entries other, int j) {
+            int c = FieldIndex.compare(types[i], numbers[i], strings[i],
+                    other.types[j], other.numbers[j], other.strings[j]);
+            return c != 0 ? c : Long.compare(offsets[i], other.offsets[j]);
+        }
+
+        void add(Deserializer deser, int pos, long offset) throws Exception {
+            if (pos < 0) {
+                return;
+            }
+            byte type;
+            long number = 0;
+            byte[] string = null;
+            switch (Format.valueOf(deser.buffer.get(pos)).getValueType()) {
+                case INTEGER:
+                    type = LONG;
+                    number = deser.getLong(pos);
+                    break;
+                case FLOAT:
+                    type = DOUBLE;
+                    number = Double.doubleToLongBits(deser.getDouble(pos));
+                    break;
+                case STRING: {
+                    type = STRING;
+                    long span = deser.stringSpan(pos);
+                    int start = (int) (span >>> 32);
+                    string = Arrays.copyOfRange(deser.buffer.array(), start, start + (int) span);
+                    break;
+                }
+                default:
+                    return;
+            }
+            if (size == types.length) {
+                grow(size * 2);
+            }
+            types[size] = type;
+            numbers[size] = number;
+            strings[size] = string;
+            offsets[size] = offset;
+            size++;
+        }
+
+        void sort() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (i, j) -> compare(i, this, j));
+            byte[] t = new byte[size];
+            long[] n = new long[size];
+            byte[][] s = new byte[size][];
+            long[] o = new long[size];
+            for (int i = 0; i < size; i++) {
+                t[i] = types[order[i]];
+                n[i] = numbers[order[i]];
+                s[i] = strings[order[i]];
+                o[i] = offsets[order[i]];
+            }
+            types = t;
+            numbers = n;
+            strings = s;
+            offsets = o;
+        }
+
+        /**
+         * Returns the merge of these entries and added into a new instance.
+         */
+        Entries merge(Entries added) {
+            Entries merged = new Entries(size + added.size);
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < size || j < added.size) {
+                boolean left;
+                if (j == added.size) {
+                    left = true;
+                } else if (i == size) {
+                    left = false;
+                } else {
+                    left = compare(i, added, j) <= 0;
+                }
+                Entries from = left ? this : added;
+                int at = left ? i++ : j++;
+                merged.types[k] = from.types[at];
+                merged.numbers[k] = from.numbers[at];
+                merged.strings[k] = from.strings[at];
+                merged.offsets[k++] = from.offsets[at];
+            }
+            merged.size = k;
+            return merged;
+        }
+
+        private void grow(int capacity) {
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it over the index file, so that a crash
+     * leaves the previous version.
+     */
+    private void write() throws IOException {
+        Entries e = entries;
+        Path tmp = Paths.get(file.toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.write(MAGIC);
+            out.writeByte(Code.SER_VERSION);
+            out.writeUTF(path);
+            out.writeLong(recordCount);
+            out.writeLong(logOffset);
+            out.writeInt(e.size);
+            for (int i = 0; i < e.size; i++) {
+                out.writeByte(e.types[i]);
+                if (e.types[i] == STRING) {
+                    out.writeInt(e.strings[i].length);
+                    out.write(e.strings[i]);
+                } else {
+                    out.writeLong(e.numbers[i]);
+                }
+                out.writeLong(e.offsets[i]);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,144 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compiled set of key paths such as "user.id", stored as a trie of UTF-8 key segments so that
+ * map keys can be matched against the encoded bytes without creating Strings.
+ * <p>
+ * Every path gets an ordinal, its position in the list the mask was built from. A path that is a
+ * prefix of another selects its whole subtree.
+ */
+public final class FieldMask {
+    private final Node root = new Node();
+    private final String[] paths;
+
+    private FieldMask(String[] paths, byte[][][] keys) {
+        this.paths = paths;
+        for (int i = 0; i < paths.length; i++) {
+            Node node = root;
+            for (byte[] key : keys[i]) {
+                node = node.addChild(key);
+            }
+            node.addIndex(i);
+        }
+    }
+
+    public static FieldMask of(String... paths) {
+        return of((byte) '.', paths);
+    }
+
+    public static FieldMask of(Collection<String> paths) {
+        return of((byte) '.', paths.toArray(new String[0]));
+    }
+
+    public static FieldMask of(byte delimiter, String... paths) {
+        byte[][][] keys = new byte[paths.length][][];
+        for (int i = 0; i < paths.length; i++) {
+            keys[i] = split(paths[i].getBytes(StandardCharsets.UTF_8), delimiter);
+        }
+        return new FieldMask(paths.clone(), keys);
+    }
+
+    /**
+     * Builds a mask from paths already split into keys, which may contain any byte including the
+     * delimiter. paths are only kept for {@link #getPath(int)}.
+     */
+    static FieldMask of(String[] paths, byte[][][] keys) {
+        return new FieldMask(paths, keys);
+    }
+
+    private static byte[][] split(byte[] path, byte delimiter) {
+        int count = 1;
+        for (byte b : path) {
+            if (b == delimiter) {
+                count++;
+            }
+        }
+        byte[][] keys = new byte[count][];
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            int end = from;
+            while (end < path.length && path[end] != delimiter) {
+                end++;
+            }
+            keys[i] = Arrays.copyOfRange(path, from, end);
+            from = end + 1;
+        }
+        return keys;
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    public String getPath(int index) {
+        return paths[index];
+    }
+
+    Node root() {
+        return root;
+    }
+
+    static final class Node {
+        private static final byte[][] NO_KEYS = new byte[0][];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final int[] NO_INDEXES = new int[0];
+
+        byte[][] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        /**
+         * ordinals of the paths ending at this node
+         */
+        int[] indexes = NO_INDEXES;
+
+        boolean isLeaf() {
+            return indexes.length > 0;
+        }
+
+        Node child(byte[] bs, int from, int len) {
+            for (int i = 0; i < keys.length; i++) {
+                byte[] key = keys[i];
+                if (key.length == len && Utils.bytesEquals(key, 0, len, bs, from, from + len)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node addChild(byte[] key) {
+            Node node = child(key, 0, key.length);
+            if (node == null) {
+                node = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = node;
+            }
+            return node;
+        }
+
+        private void addIndex(int index) {
+            indexes = Arrays.copyOf(indexes, indexes.length + 1);
+            indexes[indexes.length - 1] = index;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A boolean expression over document paths, evaluated on the encoded bytes.
+ * <p>
+ * Syntax: comparisons {@code path op literal} with op one of {@code == != < <= > >=}, combined with
+ * {@code &&}, {@code ||}, {@code !} and parentheses. Paths are dotted keys; a key quoted in backticks
+ * may be any text, dots included, as in {@code `a.b`.c}. Literals are double-quoted strings with the
+ * JSON escapes, numbers, true, false and null.
+ * <pre>
+ *     Filter f = Filter.compile("status == \"ok\" &amp;&amp; latency &gt; 250");
+ *     deser.init(bytes);
+ *     if (f.matches(deser)) { ... }
+ * </pre>
+ * All paths are located in a single pass over the document, then comparisons read the values in
+ * place: strings are compared as UTF-8 bytes and numbers without boxing. A missing or nil value
+ * only equals null; ordering comparisons against it, or against a value of another type, are
+ * false. != is the negation of ==.
+ * <p>
+ * A compiled filter is immutable and may be shared between threads.
+ */
+public final class Filter {
+    private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    private final String expression;
+    private final FieldMask mask;
+    private final Node root;
+
+    private Filter(String expression, FieldMask mask, Node root) {
+        this.expression = expression;
+        this.mask = mask;
+        this.root = root;
+    }
+
+    public static Filter compile(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.pos < expression.length()) {
+            throw parser.error("unexpected input");
+        }
+        String[] paths = parser.paths.toArray(new String[0]);
+        byte[][][] keys = parser.keys.toArray(new byte[0][][]);
+        return new Filter(expression, FieldMask.of(paths, keys), root);
+    }
+
+    /**
+     * Evaluates this filter against the document the deserializer was initialized with.
+     */
+    public boolean matches(Deserializer deser) throws Exception {
+        int[] positions = deser.positions(mask.size());
+        deser.locate(mask, positions);
+        return root.eval(deser, positions);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE
+    }
+
+    private interface Node {
+        boolean eval(Deserializer deser, int[] positions) throws Exception;
+    }
+
+    private static final class And implements Node {
+        private final Node left;
+        private final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean eval(Deserializer deser, int[] positions) throws Exception {
+            return left.eval(deser, positions) && right.eval(deser, positions);
+        }
+    }
+
+    private static final class Or implements Node {
+        private final Node left;
+        private final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean eval(Deserializer deser, int[] positions) throws Exception {
+            return left.eval(deser, positions) || right.eval(deser, positions);
+        }
+    }
+
+    private static final class Not implements Node {
+        private final Node node;
+
+        Not(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean eval(Deserializer deser, int[] positions) throws Exception {
+            return !node.eval(deser, positions);
+        }
+    }
+
+    private static final class Comparison implements Node {
+        private final int path;
+        private final Op op;
+        private final ValueType type;
+        private final byte[] string;
+        private final long longValue;
+        private final double doubleValue;
+
+        Comparison(int path, Op op, ValueType type, byte[] string, long longValue, double doubleValue) {
+            this.path = path;
+            this.op = op;
+            this.type = type;
+            this.string = string;
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+        }
+
+        @Override
+        public boolean eval(Deserializer deser, int[] positions) throws Exception {
+            int c = compare(deser, positions[path]);
+            switch (op) {
+                case EQ:
+                    return c == 0;
+                case NE:
+                    return c != 0;
+                default:
+                    if (c == INCOMPARABLE) {
+                        return false;
+                    }
+                    switch (op) {
+                        case LT:
+                            return c < 0;
+                        case LE:
+                            return c <= 0;
+                        case GT:
+                            return c > 0;
+                        default:
+                            return c >= 0;
+                    }
+            }
+        }
+
+        private int compare(Deserializer deser, int pos) throws Exception {
+            Format f = pos < 0 ? Format.NIL : Format.valueOf(deser.buffer.get(pos));
+            if (f == Format.NIL) {
+                return type == ValueType.NIL ? 0 : INCOMPARABLE;
+            }
+
+            switch (type) {
+                case STRING:
+                    return deser.compareString(pos, string);
+                case INTEGER:
+                    switch (f.getValueType()) {
+                        case INTEGER:
+                            return Long.compare(deser.getLong(pos), longValue);
+                        case FLOAT:
+                            return Double.compare(deser.getDouble(pos), longValue);
+                        default:
+                            return INCOMPARABLE;
+                    }
+                case FLOAT:
+                    return f.getValueType().isNumberType() ? Double.compare(deser.getDouble(pos), doubleValue) : INCOMPARABLE;
+                case BOOLEAN:
+                    return f == Format.BOOLEAN ? Boolean.compare(deser.getBoolean(pos), longValue != 0) : INCOMPARABLE;
+                default:
+                    return INCOMPARABLE;
+            }
+        }
+    }
+
+    private static final class Parser {
+        private final String s;
+        private final List<String> paths = new ArrayList<>();
+        private final List<byte[][]> keys = new ArrayList<>();
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Node parseOr() {
+            Node node = parseAnd();
+            while (consume("||")) {
+                node = new Or(node, parseAnd());
+            }
+            return node;
+        }
+
+        Node parseAnd() {
+            Node node = parseUnary();
+            while (consume("&&")) {
+                node = new And(node, parseUnary());
+            }
+            return node;
+        }
+
+        Node parseUnary() {
+            if (consume("!")) {
+                return new Not(parseUnary());
+            }
+            if (consume("(")) {
+                Node node = parseOr();
+                if (!consume(")")) {
+                    throw error("expected )");
+                }
+                return node;
+            }
+            return parseComparison();
+        }
+
+        Node parseComparison() {
+            int path = parsePath();
+            Op op;
+            if (consume("==")) {
+                op = Op.EQ;
+            } else if (consume("!=")) {
+                op = Op.NE;
+            } else if (consume("<=")) {
+                op = Op.LE;
+            } else if (consume(">=")) {
+                op = Op.GE;
+            } else if (consume("<")) {
+                op = Op.LT;
+            } else if (consume(">")) {
+                op = Op.GT;
+            } else {
+                throw error("expected comparison operator");
+            }
+            return parseLiteral(path, op);
+        }
+
+        /**
+         * Parses a path and returns its ordinal, the same for repeated occurrences of the path.
+         */
+        private int parsePath() {
+            skipSpaces();
+            int start = pos;
+            List<byte[]> path = new ArrayList<>();
+            path.add(parseKey().getBytes(StandardCharsets.UTF_8));
+            while (pos < s.length() && s.charAt(pos) == '.') {
+                pos++;
+                path.add(parseKey().getBytes(StandardCharsets.UTF_8));
+            }
+            String text = s.substring(start, pos);
+            int i = paths.indexOf(text);
+            if (i < 0) {
+                paths.add(text);
+                keys.add(path.toArray(new byte[0][]));
+                i = paths.size() - 1;
+            }
+            return i;
+        }
+
+        private String parseKey() {
+            int start = pos;
+            if (pos < s.length() && s.charAt(pos) == '`') {
+                int end = s.indexOf('`', pos + 1);
+                if (end < 0) {
+                    throw error("unterminated path");
+                }
+                pos = end + 1;
+                return s.substring(start + 1, end);
+            }
+            while (pos < s.length() && isKeyChar(s.charAt(pos))) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("expected path");
+            }
+            return s.substring(start, pos);
+        }
+
+        private Node parseLiteral(int path, Op op) {
+            skipSpaces();
+            if (pos >= s.length()) {
+                throw error("expected literal");
+            }
+            char c = s.charAt(pos);
+            if (c == '"') {
+                return new Comparison(path, op, ValueType.STRING, parseString().getBytes(StandardCharsets.UTF_8), 0, 0);
+            }
+            if (consumeWord("true")) {
+                return new Comparison(path, op, ValueType.BOOLEAN, null, 1, 0);
+            }
+            if (consumeWord("false")) {
+                return new Comparison(path, op, ValueType.BOOLEAN, null, 0, 0);
+            }
+            if (consumeWord("null")) {
+                if (op != Op.EQ && op != Op.NE) {
+                    throw error("null only supports == and !=");
+                }
+                return new Comparison(path, op, ValueType.NIL, null, 0, 0);
+            }
+
+            int start = pos;
+            while (pos < s.length() && "+-.0123456789eE".indexOf(s.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = s.substring(start, pos);
+            try {
+                if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                    long v = Long.parseLong(number);
+                    return new Comparison(path, op, ValueType.INTEGER, null, v, v);
+                }
+                return new Comparison(path, op, ValueType.FLOAT, null, 0, Double.parseDouble(number));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("expected literal");
+            }
+        }
+
+        private String parseString() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c == '\\') {
+                    if (pos >= s.length()) {
+                        break;
+                    }
+                    c = parseEscape();
+                }
+                sb.append(c);
+            }
+            throw error("unterminated string");
+        }
+
+        /**
+         * Returns the character of the JSON escape after a backslash.
+         */
+        private char parseEscape() {
+            char c = s.charAt(pos++);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    return c;
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u': {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = pos < s.length() ? Character.digit(s.charAt(pos), 16) : -1;
+                        if (digit < 0) {
+                            throw error("invalid unicode escape");
+                        }
+                        code = code << 4 | digit;
+                        pos++;
+                    }
+                    return (char) code;
+                }
+                default:
+                    pos--;
+                    throw error("invalid escape");
+            }
+        }
+
+        private static boolean isKeyChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '$';
+        }
+
+        private boolean consume(String token) {
+            skipSpaces();
+            if (s.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean consumeWord(String word) {
+            if (s.startsWith(word, pos)
+                    && (pos + word.length() == s.length() || !isKeyChar(s.charAt(pos + word.length())))) {
+                pos += word.length();
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(String.format("%s at %d: %s", message, pos, s));
+        }
+    }
+}
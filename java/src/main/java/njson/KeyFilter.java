@@ -0,0 +1,92 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * The Bloom filter of key paths that follows the header of documents of version
+ * {@link Code#SER_VERSION_KEY_FILTER}, see {@link Serializer#setKeyFilter(boolean)}.
+ * <p>
+ * Layout: the number of hash functions, log2 of the filter size in bytes, then the filter bits.
+ * The filter holds every path a lookup can resolve: the keys of the root map, the keys of the maps
+ * in it and so on, but not the keys of maps inside arrays. A path is hashed segment by segment,
+ * each segment continuing from the hash of its parent, so the delimiter a lookup splits the path
+ * with does not matter.
+ */
+final class KeyFilter {
+    static final int HASHES = 7;
+    static final int BITS_PER_KEY = 10;
+    static final int MIN_LOG2_BYTES = 3;
+    static final int MAX_LOG2_BYTES = 16;
+    static final int PREFIX_LENGTH = 2;
+
+    private KeyFilter() {
+    }
+
+    /**
+     * Returns the hash of the path of key below the path hashed to parent, 0 for the root.
+     */
+    static long extend(long parent, byte[] key, int off, int len) {
+        long h = parent * 0x9E3779B97F4A7C15L + 0xcbf29ce484222325L;
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (key[i] & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Returns log2 of the filter size in bytes for n keys.
+     */
+    static int log2Bytes(int n) {
+        long bytes = ((long) n * BITS_PER_KEY + 7) / 8;
+        int log2 = 64 - Long.numberOfLeadingZeros(Math.max(bytes, 1) - 1);
+        return Math.min(MAX_LOG2_BYTES, Math.max(MIN_LOG2_BYTES, log2));
+    }
+
+    static void add(byte[] filter, int off, int log2Bytes, long hash) {
+        long h = mix(hash);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int mask = (1 << (log2Bytes + 3)) - 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            filter[off + (bit >>> 3)] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    static boolean mightContain(byte[] filter, int off, int log2Bytes, int hashes, long hash) {
+        long h = mix(hash);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int mask = (1 << (log2Bytes + 3)) - 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((filter[off + (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,68 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Receives measurements from Serializers and Deserializers, see
+ * {@link Serializer#setMetrics(Metrics)} and {@link Deserializer#setMetrics(Metrics)}.
+ * <p>
+ * Methods are called on the hot path of the thread doing the work, so implementations must be
+ * cheap and thread-safe. Every method does nothing by default; with {@link #NOOP}, the default of
+ * every instance, the calls compile away.
+ */
+public interface Metrics {
+    Metrics NOOP = new Metrics() {
+    };
+
+    /**
+     * A document was packed by {@link Serializer#packJsonObject(Object)}.
+     *
+     * @param bytes    the document size
+     * @param maxDepth the deepest nesting of containers, 1 for a flat root
+     */
+    default void documentWritten(int bytes, int maxDepth) {
+    }
+
+    /**
+     * A Deserializer was initialized with a document.
+     */
+    default void documentRead(int bytes) {
+    }
+
+    /**
+     * A value was looked up by path.
+     *
+     * @param depth         the number of path segments resolved, up to the one that was missing
+     * @param keysCompared  the map keys compared against path segments
+     * @param valuesSkipped the values skipped over to get past keys that did not match
+     * @param found         false for a miss
+     */
+    default void lookup(int depth, int keysCompared, int valuesSkipped, boolean found) {
+    }
+
+    /**
+     * A scratch buffer was grown to capacity bytes.
+     */
+    default void bufferGrown(int capacity) {
+    }
+
+    /**
+     * A Serializer ran out of space.
+     */
+    default void bufferOverflow() {
+    }
+}
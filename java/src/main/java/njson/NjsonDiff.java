@@ -0,0 +1,342 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Computes the changes between two versions of a document as a small njson delta, and applies
+ * it to the old version to get the new one.
+ * <pre>
+ *     NjsonDiff diff = new NjsonDiff();
+ *     byte[] delta = diff.diff(new Slice(previous), new Slice(current));
+ *     ...
+ *     byte[] current = diff.apply(new Slice(previous), new Slice(delta));
+ * </pre>
+ * The documents are walked together, map by map. A value whose encoded bytes are the same in both
+ * versions is skipped after one bulk comparison, however large it is; a map present in both with
+ * different bytes is compared key by key, and any other changed value is written whole. Keys are
+ * matched in order first, so maps whose keys keep their order cost no searches; a key out of order
+ * is searched for among the keys of its map.
+ * <p>
+ * The delta is a document whose root is an array of operations, in the order they apply: a set is
+ * an array of the path and the new value, a remove an array of the path alone. A path is an array
+ * of keys, so keys holding the delimiter need no escaping. If the roots are not both maps the
+ * delta is a single set of the empty path to the new root. Values are copied encoded, never
+ * decoded, and documents must be big-endian as written by {@link Serializer}. A diff is not
+ * thread-safe, but can be reused.
+ */
+public final class NjsonDiff {
+    private final Deserializer from = new Deserializer();
+    private final Deserializer to = new Deserializer();
+    private final Deserializer delta = new Deserializer();
+    private Serializer out;
+
+    // entries of the maps of the from document being compared, a stack with the innermost on top:
+    // key payload position and length, value bounds, and whether the to document has the key
+    private int top;
+    private int[] keyOffsets = new int[64];
+    private int[] keyLengths = new int[64];
+    private int[] valueStarts = new int[64];
+    private int[] valueEnds = new int[64];
+    private boolean[] matched = new boolean[64];
+    /**
+     * bounds of the encoded keys of the path of the maps being compared, in the to document
+     */
+    private int depth;
+    private int[] pathStarts = new int[8];
+    private int[] pathEnds = new int[8];
+
+    /**
+     * Returns the delta turning the document from into the document to.
+     */
+    public byte[] diff(Slice from, Slice to) throws Exception {
+        SerializerPool pool = SerializerPool.getDefault();
+        Serializer ser = pool.acquireSerializer(from.length() + to.length() + 64);
+        try {
+            while (true) {
+                try {
+                    ser.init();
+                    return diff(ser, from, to).toBytes();
+                } catch (Serializer.NotEnoughSpaceException e) {
+                    // paths are repeated for every change below them
+                    int capacity = ser.capacity();
+                    pool.release(ser);
+                    ser = pool.acquireSerializer(capacity * 2);
+                }
+            }
+        } finally {
+            pool.release(ser);
+        }
+    }
+
+    /**
+     * Writes the delta turning the document from into the document to to out.
+     */
+    public Serializer diff(Serializer out, Slice from, Slice to) throws Exception {
+        init(this.from, from);
+        init(this.to, to);
+        this.out = out;
+        top = 0;
+        depth = 0;
+        try {
+            out.packHeader();
+            int position = out.reserveArrayHeader();
+            int fromRoot = this.from.dataStart;
+            int toRoot = this.to.dataStart;
+            if (isMap(this.from, fromRoot) && isMap(this.to, toRoot)) {
+                diffMaps(fromRoot, toRoot);
+            } else if (!equal(fromRoot, from.end(), toRoot, to.end())) {
+                int op = out.reserveArrayHeader();
+                out.closeContainer(out.reserveArrayHeader());
+                out.writePayload(to.array(), toRoot, to.end() - toRoot);
+                out.closeContainer(op);
+            }
+            return out.closeContainer(position);
+        } finally {
+            this.out = null;
+        }
+    }
+
+    /**
+     * Applies delta, made by {@link #diff(Slice, Slice)}, to document and returns the result.
+     */
+    public byte[] apply(Slice document, Slice delta) throws Exception {
+        NjsonEditor editor = new NjsonEditor(document);
+        Deserializer d = this.delta;
+        init(d, delta);
+        int end = arrayEnd(d);
+        while (d.buffer.position() < end) {
+            int opEnd = arrayEnd(d);
+            int pathEnd = arrayEnd(d);
+            int n = 0;
+            byte[][] path = new byte[4][];
+            while (d.buffer.position() < pathEnd) {
+                long span = d.stringSpan(d.buffer.position());
+                if (span < 0) {
+                    throw new FormatException(Format.valueOf(d.buffer.get(d.buffer.position())));
+                }
+                int keyOffset = (int) (span >>> 32);
+                int keyLength = (int) span;
+                if (n == path.length) {
+                    path = Arrays.copyOf(path, n * 2);
+                }
+                path[n++] = Arrays.copyOfRange(d.buffer.array(), keyOffset, keyOffset + keyLength);
+                d.buffer.position(keyOffset + keyLength);
+            }
+            path = Arrays.copyOf(path, n);
+
+            if (d.buffer.position() == opEnd) {
+                editor.remove(path);
+                continue;
+            }
+            int valueStart = d.buffer.position();
+            d.skipValue();
+            Slice value = new Slice(d.buffer.array(), valueStart, d.buffer.position() - valueStart);
+            if (n == 0) {
+                Serializer ser = new Serializer(value.length() + Code.HEADER_LENGTH);
+                editor = new NjsonEditor(ser.packDocument(value).toBytes());
+            } else {
+                editor.set(path, value);
+            }
+        }
+        return editor.toBytes();
+    }
+
+    private static void init(Deserializer deser, Slice document) {
+        deser.init(document);
+        if (!deser.buffer.bigEndian()) {
+            throw new FormatException("little-endian documents unsupport");
+        }
+    }
+
+    private static boolean isMap(Deserializer deser, int pos) {
+        switch (Format.valueOf(deser.buffer.get(pos))) {
+            case FIXMAP:
+            case MAP16:
+            case MAP32:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Enters the array at the position of deser and returns the end of its body.
+     */
+    private static int arrayEnd(Deserializer deser) {
+        int len = deser.enterArray();
+        if (len < 0) {
+            throw new FormatException(Format.valueOf(deser.buffer.get(deser.buffer.position())));
+        }
+        return deser.buffer.position() + len;
+    }
+
+    private boolean equal(int fromStart, int fromEnd, int toStart, int toEnd) {
+        return Utils.bytesEquals(from.buffer.array(), fromStart, fromEnd, to.buffer.array(), toStart, toEnd);
+    }
+
+    /**
+     * Writes the operations turning the map at fromMap into the map at toMap.
+     */
+    private void diffMaps(int fromMap, int toMap) throws Exception {
+        int base = top;
+        from.buffer.position(fromMap);
+        int fromEnd = from.enterMap();
+        fromEnd += from.buffer.position();
+        while (from.buffer.position() < fromEnd) {
+            int keyOffset = key(from);
+            int valueStart = from.buffer.position();
+            from.skipValue();
+            push(keyOffset, valueStart - keyOffset, valueStart, from.buffer.position());
+        }
+
+        byte[] fromArray = from.buffer.array();
+        byte[] toArray = to.buffer.array();
+        int next = base;
+        to.buffer.position(toMap);
+        int toEnd = to.enterMap();
+        toEnd += to.buffer.position();
+        while (to.buffer.position() < toEnd) {
+            int keyStart = to.buffer.position();
+            int keyOffset = key(to);
+            int valueStart = to.buffer.position();
+            int keyLength = valueStart - keyOffset;
+            to.skipValue();
+            int valueEnd = to.buffer.position();
+
+            int i = next < top && Utils.bytesEquals(fromArray, keyOffsets[next], keyOffsets[next] + keyLengths[next],
+                    toArray, keyOffset, keyOffset + keyLength) ? next : find(base, toArray, keyOffset, keyLength);
+            if (i < 0) {
+                set(keyStart, valueStart, valueEnd);
+                continue;
+            }
+            matched[i] = true;
+            next = i + 1;
+            if (equal(valueStarts[i], valueEnds[i], valueStart, valueEnd)) {
+                continue;
+            }
+            if (isMap(from, valueStarts[i]) && isMap(to, valueStart)) {
+                pushPath(keyStart, valueStart);
+                diffMaps(valueStarts[i], valueStart);
+                depth--;
+                to.buffer.position(valueEnd);
+            } else {
+                set(keyStart, valueStart, valueEnd);
+            }
+        }
+
+        for (int i = base; i < top; i++) {
+            if (!matched[i]) {
+                remove(i);
+            }
+        }
+        top = base;
+    }
+
+    /**
+     * Skips the key at the position of deser and returns the position of its payload.
+     */
+    private static int key(Deserializer deser) {
+        int pos = deser.buffer.position();
+        long span = deser.stringSpan(pos);
+        if (span < 0) {
+            throw new FormatException(Format.valueOf(deser.buffer.get(pos)));
+        }
+        int keyOffset = (int) (span >>> 32);
+        deser.buffer.position(keyOffset + (int) span);
+        return keyOffset;
+    }
+
+    /**
+     * Returns the entry of the map on top of the stack with the key, or -1.
+     */
+    private int find(int base, byte[] key, int keyOffset, int keyLength) {
+        byte[] fromArray = from.buffer.array();
+        for (int i = base; i < top; i++) {
+            if (!matched[i] && Utils.bytesEquals(fromArray, keyOffsets[i], keyOffsets[i] + keyLengths[i],
+                    key, keyOffset, keyOffset + keyLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void push(int keyOffset, int keyLength, int valueStart, int valueEnd) {
+        if (top == keyOffsets.length) {
+            int capacity = top * 2;
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            valueStarts = Arrays.copyOf(valueStarts, capacity);
+            valueEnds = Arrays.copyOf(valueEnds, capacity);
+            matched = Arrays.copyOf(matched, capacity);
+        }
+        keyOffsets[top] = keyOffset;
+        keyLengths[top] = keyLength;
+        valueStarts[top] = valueStart;
+        valueEnds[top] = valueEnd;
+        matched[top] = false;
+        top++;
+    }
+
+    private void pushPath(int keyStart, int keyEnd) {
+        if (depth == pathStarts.length) {
+            pathStarts = Arrays.copyOf(pathStarts, depth * 2);
+            pathEnds = Arrays.copyOf(pathEnds, depth * 2);
+        }
+        pathStarts[depth] = keyStart;
+        pathEnds[depth] = keyEnd;
+        depth++;
+    }
+
+    /**
+     * Writes a set of the entry of the to document whose key starts at keyStart.
+     */
+    private void set(int keyStart, int valueStart, int valueEnd) throws Exception {
+        byte[] toArray = to.buffer.array();
+        int op = out.reserveArrayHeader();
+        int path = writePath();
+        out.writePayload(toArray, keyStart, valueStart - keyStart);
+        out.closeContainer(path);
+        out.writePayload(toArray, valueStart, valueEnd - valueStart);
+        out.closeContainer(op);
+    }
+
+    /**
+     * Writes a remove of the entry i of the from document.
+     */
+    private void remove(int i) throws Exception {
+        int op = out.reserveArrayHeader();
+        int path = writePath();
+        out.packRawStringHeader(keyLengths[i]);
+        out.writePayload(from.buffer.array(), keyOffsets[i], keyLengths[i]);
+        out.closeContainer(path);
+        out.closeContainer(op);
+    }
+
+    /**
+     * Opens the path array of an operation and writes the keys of the maps being compared.
+     */
+    private int writePath() throws Exception {
+        int path = out.reserveArrayHeader();
+        byte[] toArray = to.buffer.array();
+        for (int i = 0; i < depth; i++) {
+            out.writePayload(toArray, pathStarts[i], pathEnds[i] - pathStarts[i]);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,407 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Updates fields of an encoded document without unpacking it.
+ * <pre>
+ *     NjsonEditor editor = new NjsonEditor(bytes);
+ *     editor.set("stats.views", views + 1).set("status", "done");
+ *     bytes = editor.toBytes();
+ * </pre>
+ * A path is located like {@link Deserializer#getValuePos(String)}, skipping the values before it
+ * without decoding them. A new value of the same encoded size overwrites the old one in the array
+ * the editor was given; otherwise the bytes after it are moved and the byte lengths of the maps on
+ * the path are updated, widening a map header that the new length does not fit. The first edit
+ * changing the size copies the document into an array owned by the editor, with room for more.
+ * <p>
+ * Setting a missing key appends it to its map, which must exist, and {@link #remove(String)}
+ * takes a key out with its value. Documents with a
+ * {@link Serializer#setKeyFilter(boolean) key filter} keep it up to date: an appended key is added
+ * to the filter, and a map value, whose keys are not, drops the filter and makes the document of
+ * version {@link Code#SER_VERSION}.
+ */
+public final class NjsonEditor {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] array;
+    private int offset;
+    private int end;
+    /**
+     * whether the array was allocated by the editor, so that it can be grown in place
+     */
+    private boolean owned;
+    private byte delimiter = '.';
+    private ExtensionRegistry extensions = ExtensionRegistry.DEFAULT;
+    private final Deserializer deser = new Deserializer();
+    /**
+     * positions of the headers of the maps on the path located last, outermost first
+     */
+    private int[] maps = new int[8];
+    private int depth;
+    /**
+     * bounds of the value of the entry located last
+     */
+    private int valuePos;
+    private int valueEnd;
+
+    public NjsonEditor(byte[] document) {
+        this(document, 0, document.length);
+    }
+
+    public NjsonEditor(byte[] document, int offset, int end) {
+        BytesBuffer.checkBounds(offset, end - offset, document.length);
+        if (end - offset < Code.HEADER_LENGTH || !Code.getBigEndian(document[offset + 1])) {
+            throw new FormatException("document must have a big-endian header");
+        }
+        this.array = document;
+        this.offset = offset;
+        this.end = end;
+    }
+
+    public NjsonEditor(Slice document) {
+        this(document.array(), document.offset(), document.end());
+    }
+
+    public void setDelimiter(byte delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public void setExtensionRegistry(ExtensionRegistry extensions) {
+        this.extensions = extensions;
+        deser.setExtensionRegistry(extensions);
+    }
+
+    /**
+     * Sets the value at path to value, which may be of any type accepted inside documents by
+     * {@link Serializer#packJsonObject(Object)}, or null. A {@link Slice} value is written as the
+     * encoded value it holds, see {@link Serializer#packRaw(Slice)}.
+     *
+     * @throws NotFoundException if a map on the path is missing
+     * @throws FormatException   if a value on the path is not a map
+     */
+    public NjsonEditor set(String path, Object value) throws Exception {
+        return set(split(path), value);
+    }
+
+    /**
+     * Removes the key at path with its value. Removing a missing path does nothing.
+     *
+     * @throws FormatException if a value on the path is not a map
+     */
+    public NjsonEditor remove(String path) throws Exception {
+        return remove(split(path));
+    }
+
+    /**
+     * Sets the value at the path given as UTF-8 keys, see {@link #set(String, Object)}.
+     */
+    NjsonEditor set(byte[][] path, Object value) throws Exception {
+        int entry = locate(path);
+        if (entry < 0 && depth < path.length) {
+            throw new NotFoundException(join(path));
+        }
+
+        int filter = deser.filterHashes > 0 ? deser.filterStart - offset : -1;
+        int filterLength = deser.dataStart - offset - Code.HEADER_LENGTH;
+        boolean addsPaths = value instanceof Map
+                || value instanceof Slice && Serializer.containerType((Slice) value) == ValueType.MAP;
+        if (entry >= 0 && value instanceof Slice) {
+            Slice raw = (Slice) value;
+            resize(splice(valuePos, valueEnd, raw.array(), raw.offset(), raw.length()));
+        } else if (entry >= 0) {
+            byte[] encoded = encode(null, value);
+            resize(splice(valuePos, valueEnd, encoded, 0, encoded.length));
+        } else {
+            byte[] encoded = encode(path[path.length - 1], value);
+            int mapEnd = bodyEnd(maps[depth - 1]);
+            resize(splice(mapEnd, mapEnd, encoded, 0, encoded.length));
+            if (filter >= 0 && !addsPaths && deser.filterHashes == KeyFilter.HASHES) {
+                KeyFilter.add(array, offset + filter, deser.filterLog2Bytes, hash(path));
+            } else {
+                addsPaths = true;
+            }
+        }
+
+        if (filter >= 0 && addsPaths) {
+            depth = 0;
+            splice(offset + Code.HEADER_LENGTH, offset + Code.HEADER_LENGTH + filterLength, EMPTY, 0, 0);
+            array[offset] = Code.SER_VERSION;
+        }
+        return this;
+    }
+
+    /**
+     * Removes the key at the path given as UTF-8 keys, see {@link #remove(String)}. The paths
+     * below it stay in the key filter of the document, if it has one, which only costs lookups
+     * of them a scan.
+     */
+    NjsonEditor remove(byte[][] path) throws Exception {
+        int entry = locate(path);
+        if (entry >= 0) {
+            resize(splice(entry, valueEnd, EMPTY, 0, 0));
+        }
+        return this;
+    }
+
+    /**
+     * Returns the edited document, backed by the array of the editor until the next edit.
+     */
+    public Slice toSlice() {
+        return new Slice(array, offset, end - offset);
+    }
+
+    public byte[] toBytes() {
+        return Arrays.copyOfRange(array, offset, end);
+    }
+
+    /**
+     * Finds the entry of the path and records the maps on the way in maps. Returns the position of
+     * the key of the entry and sets valuePos and valueEnd, or returns -1 if a map has no such key.
+     */
+    private int locate(byte[][] path) throws Exception {
+        deser.init(array, offset, end);
+        depth = 0;
+        int header = deser.dataStart;
+        for (int i = 0; ; i++) {
+            if (depth == maps.length) {
+                maps = Arrays.copyOf(maps, depth * 2);
+            }
+            maps[depth++] = header;
+            int entry = findEntry(header, path[i]);
+            if (entry < 0 || i == path.length - 1) {
+                return entry;
+            }
+            header = valuePos;
+        }
+    }
+
+    /**
+     * Finds key in the map at header by comparing it with the encoded keys in place.
+     */
+    private int findEntry(int header, byte[] key) throws Exception {
+        deser.buffer.position(header);
+        int len = deser.enterMap();
+        if (len < 0) {
+            throw new FormatException(Format.valueOf(array[header]));
+        }
+        int pos = deser.buffer.position();
+        int bodyEnd = pos + len;
+        while (pos < bodyEnd) {
+            long span = deser.stringSpan(pos);
+            if (span < 0) {
+                throw new FormatException(Format.valueOf(array[pos]));
+            }
+            int keyOffset = (int) (span >>> 32);
+            int keyLength = (int) span;
+            valuePos = keyOffset + keyLength;
+            deser.buffer.position(valuePos);
+            deser.skipValue();
+            valueEnd = deser.buffer.position();
+            if (Utils.bytesEquals(array, keyOffset, keyOffset + keyLength, key, 0, key.length)) {
+                return pos;
+            }
+            pos = valueEnd;
+        }
+        return -1;
+    }
+
+    /**
+     * Splits path at the delimiter into UTF-8 keys.
+     */
+    private byte[][] split(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int n = 1;
+        for (byte b : bytes) {
+            if (b == delimiter) {
+                n++;
+            }
+        }
+        byte[][] keys = new byte[n][];
+        int fromIndex = 0;
+        for (int i = 0; i < n; i++) {
+            int endIndex = fromIndex;
+            while (endIndex < bytes.length && bytes[endIndex] != delimiter) {
+                endIndex++;
+            }
+            keys[i] = Arrays.copyOfRange(bytes, fromIndex, endIndex);
+            fromIndex = endIndex + 1;
+        }
+        return keys;
+    }
+
+    private String join(byte[][] path) {
+        StringBuilder sb = new StringBuilder();
+        for (byte[] key : path) {
+            if (sb.length() > 0) {
+                sb.append((char) delimiter);
+            }
+            sb.append(new String(key, StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hashes the path for the key filter, see {@link KeyFilter#extend(long, byte[], int, int)}.
+     */
+    private static long hash(byte[][] path) {
+        long hash = 0;
+        for (byte[] key : path) {
+            hash = KeyFilter.extend(hash, key, 0, key.length);
+        }
+        return hash;
+    }
+
+    /**
+     * Packs value, preceded by the UTF-8 key unless it is null.
+     */
+    private byte[] encode(byte[] key, Object value) throws Exception {
+        SerializerPool pool = SerializerPool.getDefault();
+        Serializer ser = pool.acquireSerializer();
+        try {
+            while (true) {
+                try {
+                    ser.init();
+                    ser.setExtensionRegistry(extensions);
+                    if (key != null) {
+                        ser.packRawStringHeader(key.length);
+                        ser.writePayload(key, 0, key.length);
+                    }
+                    ser.packValue(value);
+                    return ser.toBytes();
+                } catch (Serializer.NotEnoughSpaceException e) {
+                    int capacity = ser.capacity();
+                    pool.release(ser);
+                    ser = pool.acquireSerializer(capacity * 2);
+                }
+            }
+        } finally {
+            pool.release(ser);
+        }
+    }
+
+    /**
+     * Replaces the bytes [from, to) of the document with srcLength bytes of src and returns the
+     * change in length. Positions in maps are kept pointing at the same headers if the document
+     * moves.
+     */
+    private int splice(int from, int to, byte[] src, int srcOffset, int srcLength) {
+        int delta = srcLength - (to - from);
+        if (delta != 0) {
+            int length = end - offset + delta;
+            if (owned && offset + length <= array.length) {
+                System.arraycopy(array, to, array, to + delta, end - to);
+            } else {
+                byte[] grown = new byte[length + Math.max(length >> 2, 64)];
+                System.arraycopy(array, offset, grown, 0, from - offset);
+                System.arraycopy(array, to, grown, from - offset + srcLength, end - to);
+                for (int i = 0; i < depth; i++) {
+                    maps[i] -= offset;
+                }
+                from -= offset;
+                array = grown;
+                offset = 0;
+                owned = true;
+            }
+            end = offset + length;
+        }
+        System.arraycopy(src, srcOffset, array, from, srcLength);
+        return delta;
+    }
+
+    /**
+     * Adds delta to the byte lengths of the maps on the path, innermost first.
+     */
+    private void resize(int delta) {
+        for (int i = depth - 1; i >= 0 && delta != 0; i--) {
+            int header = maps[i];
+            byte b = array[header];
+            int length;
+            switch (Format.valueOf(b)) {
+                case FIXMAP:
+                    length = (b & 0x0f) + delta;
+                    if (length <= 0x0f) {
+                        array[header] = (byte) (Code.FIXMAP_PREFIX | length);
+                        continue;
+                    }
+                    delta += widen(header, 1, length);
+                    break;
+                case MAP16:
+                    length = getShort(header + 1) + delta;
+                    if (length <= 0xffff) {
+                        array[header + 1] = (byte) (length >>> 8);
+                        array[header + 2] = (byte) length;
+                        continue;
+                    }
+                    delta += widen(header, 3, length);
+                    break;
+                case MAP32:
+                    putInt(header + 1, getInt(header + 1) + delta);
+                    break;
+                default:
+                    throw new FormatException(Format.valueOf(b));
+            }
+        }
+    }
+
+    /**
+     * Replaces a map header of headerLength bytes by a MAP32 header of the body length length and
+     * returns the change in length.
+     */
+    private int widen(int header, int headerLength, int length) {
+        byte[] map32 = new byte[5];
+        map32[0] = Code.MAP32;
+        map32[1] = (byte) (length >>> 24);
+        map32[2] = (byte) (length >>> 16);
+        map32[3] = (byte) (length >>> 8);
+        map32[4] = (byte) length;
+        return splice(header, header + headerLength, map32, 0, map32.length);
+    }
+
+    private int bodyEnd(int header) {
+        byte b = array[header];
+        switch (Format.valueOf(b)) {
+            case FIXMAP:
+                return header + 1 + (b & 0x0f);
+            case MAP16:
+                return header + 3 + getShort(header + 1);
+            case MAP32:
+                return header + 5 + getInt(header + 1);
+            default:
+                throw new FormatException(Format.valueOf(b));
+        }
+    }
+
+    private int getShort(int pos) {
+        return (array[pos] & 0xff) << 8 | (array[pos + 1] & 0xff);
+    }
+
+    private int getInt(int pos) {
+        return array[pos] << 24 | (array[pos + 1] & 0xff) << 16 | (array[pos + 2] & 0xff) << 8 | (array[pos + 3] & 0xff);
+    }
+
+    private void putInt(int pos, int v) {
+        array[pos] = (byte) (v >>> 24);
+        array[pos + 1] = (byte) (v >>> 16);
+        array[pos + 2] = (byte) (v >>> 8);
+        array[pos + 3] = (byte) v;
+    }
+}
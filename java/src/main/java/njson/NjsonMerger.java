@@ -0,0 +1,240 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Combines documents into one without decoding their values.
+ * <pre>
+ *     NjsonMerger merger = new NjsonMerger();
+ *     merger.setConflict(NjsonMerger.Conflict.FIRST);
+ *     byte[] merged = merger.merge(new Slice(profile), new Slice(orders), new Slice(scores));
+ * </pre>
+ * Documents whose roots are maps are merged shallowly: the entries of every root map are copied
+ * in order, encoded bytes as they are, and a key present in several documents is resolved by the
+ * {@link #setConflict(Conflict) conflict policy}. Documents whose roots are arrays are
+ * concatenated, which copies each array body once since containers are prefixed by their byte
+ * length rather than their element count. Mixing map and array roots throws FormatException.
+ * <p>
+ * The merged document has no {@link Serializer#setKeyFilter(boolean) key filter}, whether or not
+ * the documents had one. A merger is not thread-safe, but can be reused.
+ */
+public final class NjsonMerger {
+    /**
+     * How a key present in several documents is merged.
+     */
+    public enum Conflict {
+        /**
+         * keeps the value of the first document with the key
+         */
+        FIRST,
+        /**
+         * keeps the value of the last document with the key, at the position of the first
+         */
+        LAST,
+        /**
+         * throws FormatException
+         */
+        FAIL
+    }
+
+    private final Deserializer deser = new Deserializer();
+    private Conflict conflict = Conflict.LAST;
+
+    // the entries to write, in order: document, key payload position and length, entry bounds
+    private int entryCount;
+    private int[] entryDocs = new int[64];
+    private int[] keyOffsets = new int[64];
+    private int[] keyLengths = new int[64];
+    private int[] entryStarts = new int[64];
+    private int[] entryEnds = new int[64];
+    /**
+     * open addressing table from key to entry index + 1, 0 for an empty slot
+     */
+    private int[] table = new int[128];
+
+    public void setConflict(Conflict conflict) {
+        this.conflict = conflict;
+    }
+
+    /**
+     * Merges documents into a new document.
+     */
+    public byte[] merge(Slice... documents) throws Exception {
+        int size = Code.HEADER_LENGTH + 5;
+        for (Slice document : documents) {
+            size += document.length();
+        }
+        SerializerPool pool = SerializerPool.getDefault();
+        Serializer ser = pool.acquireSerializer(size);
+        try {
+            return merge(ser, documents).toBytes();
+        } finally {
+            pool.release(ser);
+        }
+    }
+
+    /**
+     * Writes the merged document to out, which must have room for about the total length of the
+     * documents.
+     */
+    public Serializer merge(Serializer out, Slice... documents) throws Exception {
+        if (documents.length == 0) {
+            throw new IllegalArgumentException("nothing to merge");
+        }
+        boolean map = isMap(documents[0]);
+        for (int i = 1; i < documents.length; i++) {
+            if (isMap(documents[i]) != map) {
+                throw new FormatException("cannot merge maps with arrays");
+            }
+        }
+
+        out.packHeader();
+        if (map) {
+            int position = out.reserveMapHeader();
+            collectEntries(documents);
+            writeEntries(out, documents);
+            return out.closeContainer(position);
+        }
+        int position = out.reserveArrayHeader();
+        for (Slice document : documents) {
+            deser.init(document);
+            int len = deser.enterArray();
+            out.writePayload(document.array(), deser.buffer.position(), len);
+        }
+        return out.closeContainer(position);
+    }
+
+    /**
+     * Returns whether the root of document is a map, or false if it is an array.
+     */
+    private boolean isMap(Slice document) {
+        deser.init(document);
+        if (!deser.buffer.bigEndian()) {
+            throw new FormatException("cannot merge little-endian documents");
+        }
+        switch (Format.valueOf(deser.buffer.get(deser.dataStart))) {
+            case FIXMAP:
+            case MAP16:
+            case MAP32:
+                return true;
+            case FIXARRAY:
+            case ARRAY16:
+            case ARRAY32:
+                return false;
+            default:
+                throw new FormatException(Format.valueOf(deser.buffer.get(deser.dataStart)));
+        }
+    }
+
+    private void collectEntries(Slice[] documents) throws Exception {
+        entryCount = 0;
+        Arrays.fill(table, 0);
+        for (int doc = 0; doc < documents.length; doc++) {
+            deser.init(documents[doc]);
+            int len = deser.enterMap();
+            int end = deser.buffer.position() + len;
+            while (deser.buffer.position() < end) {
+                int start = deser.buffer.position();
+                long span = deser.stringSpan(start);
+                if (span < 0) {
+                    throw new FormatException(Format.valueOf(deser.buffer.get(start)));
+                }
+                int keyOffset = (int) (span >>> 32);
+                int keyLength = (int) span;
+                deser.buffer.position(keyOffset + keyLength);
+                deser.skipValue();
+                add(documents, doc, keyOffset, keyLength, start, deser.buffer.position());
+            }
+        }
+    }
+
+    private void add(Slice[] documents, int doc, int keyOffset, int keyLength, int start, int end) {
+        byte[] array = documents[doc].array();
+        int mask = table.length - 1;
+        int slot = (int) KeyFilter.extend(0, array, keyOffset, keyLength) & mask;
+        while (table[slot] != 0) {
+            int i = table[slot] - 1;
+            if (Utils.bytesEquals(documents[entryDocs[i]].array(), keyOffsets[i], keyOffsets[i] + keyLengths[i],
+                    array, keyOffset, keyOffset + keyLength)) {
+                switch (conflict) {
+                    case FIRST:
+                        return;
+                    case LAST:
+                        set(i, doc, keyOffset, keyLength, start, end);
+                        return;
+                    default:
+                        throw new FormatException("duplicate key "
+                                + new String(array, keyOffset, keyLength, StandardCharsets.UTF_8));
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (entryCount == entryDocs.length) {
+            int capacity = entryCount * 2;
+            entryDocs = Arrays.copyOf(entryDocs, capacity);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            entryStarts = Arrays.copyOf(entryStarts, capacity);
+            entryEnds = Arrays.copyOf(entryEnds, capacity);
+        }
+        set(entryCount, doc, keyOffset, keyLength, start, end);
+        table[slot] = ++entryCount;
+        if (entryCount * 2 > table.length) {
+            rehash(documents);
+        }
+    }
+
+    private void set(int i, int doc, int keyOffset, int keyLength, int start, int end) {
+        entryDocs[i] = doc;
+        keyOffsets[i] = keyOffset;
+        keyLengths[i] = keyLength;
+        entryStarts[i] = start;
+        entryEnds[i] = end;
+    }
+
+    private void rehash(Slice[] documents) {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < entryCount; i++) {
+            int slot = (int) KeyFilter.extend(0, documents[entryDocs[i]].array(), keyOffsets[i], keyLengths[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Copies the entries to out, each run of entries adjacent in their document at once.
+     */
+    private void writeEntries(Serializer out, Slice[] documents) throws Exception {
+        int i = 0;
+        while (i < entryCount) {
+            int doc = entryDocs[i];
+            int start = entryStarts[i];
+            int end = entryEnds[i];
+            for (i++; i < entryCount && entryDocs[i] == doc && entryStarts[i] == end; i++) {
+                end = entryEnds[i];
+            }
+            out.writePayload(documents[doc].array(), start, end - start);
+        }
+    }
+}
@@ -18,23 +18,28 @@ package njson;
 
 // Created by xuning on 2017/5/29
 
+/**
+ * Thrown by getters for a missing path. Missing paths are common enough in sparse documents to be
+ * on the hot path, so the exception has no stack trace; the non-throwing getters such as
+ * {@link Deserializer#getIntOr(String, int)} avoid it altogether.
+ */
 public final class NotFoundException extends RuntimeException {
     public static final IllegalStateException UNREACHABLE = new IllegalStateException("Cannot reach here");
 
     public NotFoundException() {
-        super();
+        super(null, null, false, false);
     }
 
     public NotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public NotFoundException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 
     public NotFoundException(Throwable cause) {
-        super(cause);
+        super(cause == null ? null : cause.toString(), cause, false, false);
     }
 
     public static UnsupportedOperationException UNSUPPORTED(String operationName) {
@@ -18,23 +18,26 @@ package njson;
 
 // Created by xuning on 2017/5/29
 
+/**
+ * Thrown by getters when the value is null. Like {@link NotFoundException}, it has no stack trace.
+ */
 public final class NullException extends RuntimeException {
     public static final IllegalStateException UNREACHABLE = new IllegalStateException("Cannot reach here");
 
     public NullException() {
-        super();
+        super(null, null, false, false);
     }
 
     public NullException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public NullException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, false, false);
     }
 
     public NullException(Throwable cause) {
-        super(cause);
+        super(cause == null ? null : cause.toString(), cause, false, false);
     }
 
     public static UnsupportedOperationException UNSUPPORTED(String operationName) {
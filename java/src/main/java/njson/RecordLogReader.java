@@ -0,0 +1,287 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a log written by {@link RecordLogWriter}, by record number or sequentially.
+ * <pre>
+ *     try (RecordLogReader reader = new RecordLogReader(path)) {
+ *         byte[] record = reader.read(42);
+ *         reader.seek(0);
+ *         while ((record = reader.next()) != null) {
+ *             deser.init(record);
+ *         }
+ *     }
+ * </pre>
+ * Random access starts from the closest index entry at or before the record and steps over the
+ * records in between by their lengths. Records appended after the reader was opened are visible;
+ * a record still being written reads as the end of the log. So does a record after the last index
+ * entry whose checksum does not match, which is where {@link RecordLogWriter} recovery truncates
+ * the log; a mismatch before that throws {@link FormatException}.
+ */
+public final class RecordLogReader implements Closeable {
+    private static final int READ_AHEAD = 64 * 1024;
+
+    private final FileChannel channel;
+    /**
+     * record number and file offset of every index entry
+     */
+    private final long[] index;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_AHEAD);
+    private final CRC32 crc = new CRC32();
+    /**
+     * file offset of the start of buffer
+     */
+    private long bufferOffset;
+    private long position;
+    private long recordNo;
+
+    public RecordLogReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(RecordLogWriter.HEADER_LENGTH);
+            read(channel, header, 0);
+            RecordLogWriter.checkHeader(header);
+
+            Path indexPath = RecordLogWriter.indexPath(path);
+            if (Files.exists(indexPath)) {
+                try (FileChannel idx = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                    index = readIndex(idx, channel.size());
+                }
+            } else {
+                index = new long[0];
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        buffer.limit(0);
+        seekStart();
+    }
+
+    /**
+     * Reads the entries of an index whose offsets lie inside a log of the given size.
+     */
+    static long[] readIndex(FileChannel index, long logSize) throws IOException {
+        int n = (int) (index.size() / RecordLogWriter.INDEX_ENTRY_LENGTH);
+        ByteBuffer bytes = ByteBuffer.allocate(n * RecordLogWriter.INDEX_ENTRY_LENGTH);
+        read(index, bytes, 0);
+        long[] entries = new long[2 * n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            long recordNo = bytes.getLong(i * RecordLogWriter.INDEX_ENTRY_LENGTH);
+            long offset = bytes.getLong(i * RecordLogWriter.INDEX_ENTRY_LENGTH + 8);
+            if (offset > logSize) {
+                break;
+            }
+            entries[2 * count] = recordNo;
+            entries[2 * count + 1] = offset;
+            count++;
+        }
+        return count == n ? entries : Arrays.copyOf(entries, 2 * count);
+    }
+
+    static void read(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Reads record recordNo.
+     *
+     * @return the record, or null if the log has no such record
+     */
+    public byte[] read(long recordNo) throws IOException {
+        seek(recordNo);
+        return next();
+    }
+
+    /**
+     * Moves to record recordNo, so that {@link #next()} returns it.
+     *
+     * @return false if the log ends before the record
+     */
+    public boolean seek(long recordNo) throws IOException {
+        if (recordNo < 0) {
+            throw new IndexOutOfBoundsException(String.valueOf(recordNo));
+        }
+        // binary search for the last index entry at or before recordNo
+        int lo = 0;
+        int hi = index.length / 2 - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index[2 * mid] <= recordNo) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (recordNo < this.recordNo || (found >= 0 && index[2 * found] > this.recordNo)) {
+            if (found < 0) {
+                seekStart();
+            } else {
+                this.recordNo = index[2 * found];
+                position = index[2 * found + 1];
+            }
+        }
+        while (this.recordNo < recordNo) {
+            int len = recordLength(position);
+            if (len < 0) {
+                return false;
+            }
+            position += RecordLogWriter.RECORD_HEADER_LENGTH + len;
+            this.recordNo++;
+        }
+        return true;
+    }
+
+    /**
+     * Moves to a record whose number and file offset are known, such as a position saved from
+     * {@link #getRecordNo()} and {@link #getPosition()}.
+     */
+    public void seek(long recordNo, long offset) {
+        this.recordNo = recordNo;
+        this.position = offset;
+    }
+
+    private void seekStart() {
+        recordNo = 0;
+        position = RecordLogWriter.HEADER_LENGTH;
+    }
+
+    /**
+     * Reads the record at a file offset, as returned by {@link #getPosition()}.
+     */
+    public byte[] readAt(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RecordLogWriter.RECORD_HEADER_LENGTH);
+        read(channel, header, offset);
+        int len = header.getInt(0);
+        if (len < 0) {
+            throw new FormatException(String.format("record length %d at %d", len, offset));
+        }
+        byte[] record = new byte[len];
+        read(channel, ByteBuffer.wrap(record), offset + RecordLogWriter.RECORD_HEADER_LENGTH);
+        if (!checksumMatches(record, header.getInt(4))) {
+            throw new FormatException(String.format("record checksum mismatch at %d", offset));
+        }
+        return record;
+    }
+
+    /**
+     * Returns the file offset of the record {@link #next()} returns.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the number of the record {@link #next()} returns.
+     */
+    public long getRecordNo() {
+        return recordNo;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the record, or null at the end of the log
+     */
+    public byte[] next() throws IOException {
+        int len = recordLength(position);
+        if (len < 0) {
+            return null;
+        }
+        int checksum = buffer.getInt((int) (position - bufferOffset) + 4);
+        byte[] record = new byte[len];
+        long start = position + RecordLogWriter.RECORD_HEADER_LENGTH;
+        if (start >= bufferOffset && start + len <= bufferOffset + buffer.limit()) {
+            System.arraycopy(buffer.array(), (int) (start - bufferOffset), record, 0, len);
+        } else {
+            read(channel, ByteBuffer.wrap(record), start);
+        }
+        if (!checksumMatches(record, checksum)) {
+            if (index.length == 0 || position >= index[index.length - 1]) {
+                return null;
+            }
+            throw new FormatException(String.format("record %d checksum mismatch at %d", recordNo, position));
+        }
+        position = start + len;
+        recordNo++;
+        return record;
+    }
+
+    private boolean checksumMatches(byte[] record, int checksum) {
+        RecordLogWriter.checksum(crc, record.length).update(record, 0, record.length);
+        return (int) crc.getValue() == checksum;
+    }
+
+    /**
+     * Returns the length of the record at pos, or -1 if it is not completely written. The record
+     * header is in the read-ahead buffer afterwards.
+     */
+    private int recordLength(long pos) throws IOException {
+        if (pos < bufferOffset || pos + RecordLogWriter.RECORD_HEADER_LENGTH > bufferOffset + buffer.limit()) {
+            fill(pos);
+            if (buffer.limit() < RecordLogWriter.RECORD_HEADER_LENGTH) {
+                return -1;
+            }
+        }
+        int len = buffer.getInt((int) (pos - bufferOffset));
+        long end = pos + RecordLogWriter.RECORD_HEADER_LENGTH + len;
+        if (len < 0 || (end > bufferOffset + buffer.limit() && end > channel.size())) {
+            return -1;
+        }
+        return len;
+    }
+
+    /**
+     * Reads ahead from pos, as far as the log is written.
+     */
+    private void fill(long pos) throws IOException {
+        buffer.clear();
+        bufferOffset = pos;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) <= 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,384 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Appends njson records to a log file.
+ * <p>
+ * File layout: magic "NJRL" and {@link #VERSION}, then every record as its int32 byte length, the
+ * int32 CRC32 of the length and record bytes, and the record bytes. Records are numbered from 0. Every
+ * {@link #setIndexInterval(int) index interval} records, the record number and file offset are
+ * added to a sparse index in the file of the same name with ".idx" appended, so that
+ * {@link RecordLogReader} can seek without scanning the whole log.
+ * <p>
+ * Appends are buffered and written when the buffer fills or on {@link #sync()}. A sync flushes
+ * and forces the log to disk; threads that sync while another sync is in progress wait for it and
+ * share the next one, so concurrent appenders pay for one fsync per batch (group commit). With
+ * {@link #setSyncBatchSize(int)} or {@link #setSyncInterval(long)} appends sync by themselves.
+ * <p>
+ * Opening an existing log continues after its last complete record; a partially written record at
+ * the end, detected by its length or checksum, is truncated along with everything after it.
+ */
+public final class RecordLogWriter implements Closeable {
+    static final byte[] MAGIC = new byte[]{'N', 'J', 'R', 'L'};
+    static final byte VERSION = 0x02;
+    static final int HEADER_LENGTH = 4 + 1;
+    /**
+     * length and checksum in front of every record
+     */
+    static final int RECORD_HEADER_LENGTH = 4 + 4;
+    static final int INDEX_ENTRY_LENGTH = 8 + 8;
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int DEFAULT_INDEX_INTERVAL = 256;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final FileChannel index;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_LENGTH * 64);
+    private final CRC32 crc = new CRC32();
+    private int indexInterval = DEFAULT_INDEX_INTERVAL;
+    private int syncBatchSize;
+    private long syncInterval;
+
+    /**
+     * file offset of the next record
+     */
+    private long offset;
+    private long recordCount;
+    private long lastIndexed = -1;
+    private long durableCount;
+    private long lastSync = System.currentTimeMillis();
+    private boolean syncing;
+    private boolean closed;
+
+    public RecordLogWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            index = FileChannel.open(indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.put(MAGIC).put(VERSION).flip();
+                write(channel, header, 0);
+                index.truncate(0);
+                offset = HEADER_LENGTH;
+            } else {
+                recover();
+            }
+            durableCount = recordCount;
+        } catch (IOException | RuntimeException e) {
+            close(channel, index);
+            throw e;
+        }
+    }
+
+    static Path indexPath(Path path) {
+        return Paths.get(path.toString() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Sets the number of records between index entries.
+     */
+    public synchronized void setIndexInterval(int indexInterval) {
+        if (indexInterval <= 0) {
+            throw new IllegalArgumentException("index interval must be positive");
+        }
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Syncs after every batchSize appended records, 0 to sync only on request.
+     */
+    public synchronized void setSyncBatchSize(int batchSize) {
+        this.syncBatchSize = batchSize;
+    }
+
+    /**
+     * Syncs on append when the last sync is older than millis, 0 to sync only on request.
+     */
+    public synchronized void setSyncInterval(long millis) {
+        this.syncInterval = millis;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public long append(byte[] record) throws IOException {
+        return append(record, 0, record.length);
+    }
+
+    public long append(Slice record) throws IOException {
+        return append(record.array(), record.offset(), record.length());
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @return the record number
+     */
+    public long append(byte[] record, int off, int len) throws IOException {
+        long recordNo;
+        boolean sync;
+        synchronized (this) {
+            checkOpen();
+            if (len > 0 && record[off] != Code.SER_VERSION && record[off] != Code.SER_VERSION_KEY_FILTER) {
+                throw new FormatException(String.format("record version %d unsupport", record[off]));
+            }
+            recordNo = recordCount;
+            if (recordNo % indexInterval == 0 && recordNo > lastIndexed) {
+                addIndexEntry(recordNo, offset + buffer.position());
+            }
+            checksum(crc, len).update(record, off, len);
+            int checksum = (int) crc.getValue();
+            if (buffer.remaining() < RECORD_HEADER_LENGTH + len) {
+                flushBuffer();
+            }
+            if (buffer.remaining() < RECORD_HEADER_LENGTH + len) {
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+                header.putInt(len).putInt(checksum).flip();
+                write(channel, header, offset);
+                write(channel, ByteBuffer.wrap(record, off, len), offset + RECORD_HEADER_LENGTH);
+                offset += RECORD_HEADER_LENGTH + len;
+            } else {
+                buffer.putInt(len);
+                buffer.putInt(checksum);
+                buffer.put(record, off, len);
+            }
+            recordCount++;
+
+            long pending = recordCount - durableCount;
+            sync = (syncBatchSize > 0 && pending >= syncBatchSize)
+                    || (syncInterval > 0 && System.currentTimeMillis() - lastSync >= syncInterval);
+        }
+        if (sync) {
+            sync(recordNo);
+        }
+        return recordNo;
+    }
+
+    /**
+     * Makes every appended record durable.
+     */
+    public void sync() throws IOException {
+        long last;
+        synchronized (this) {
+            last = recordCount - 1;
+        }
+        sync(last);
+    }
+
+    /**
+     * Makes the records up to recordNo durable, sharing the fsync with concurrent callers.
+     */
+    public void sync(long recordNo) throws IOException {
+        long target;
+        synchronized (this) {
+            while (syncing) {
+                if (durableCount > recordNo) {
+                    return;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (durableCount > recordNo) {
+                return;
+            }
+            checkOpen();
+            flushBuffer();
+            flushIndex();
+            target = recordCount;
+            syncing = true;
+        }
+
+        boolean done = false;
+        try {
+            // appends continue into the buffer while the disk catches up
+            channel.force(false);
+            index.force(false);
+            done = true;
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                if (done) {
+                    durableCount = target;
+                    lastSync = System.currentTimeMillis();
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void addIndexEntry(long recordNo, long position) throws IOException {
+        if (indexBuffer.remaining() < INDEX_ENTRY_LENGTH) {
+            flushIndex();
+        }
+        indexBuffer.putLong(recordNo);
+        indexBuffer.putLong(position);
+        lastIndexed = recordNo;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        int len = buffer.remaining();
+        write(channel, buffer, offset);
+        offset += len;
+        buffer.clear();
+    }
+
+    private void flushIndex() throws IOException {
+        indexBuffer.flip();
+        write(index, indexBuffer, index.size());
+        indexBuffer.clear();
+    }
+
+    /**
+     * Checks the magic and version of the file header at the start of header.
+     */
+    static void checkHeader(ByteBuffer header) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new FormatException("not a record log");
+            }
+        }
+        if (header.get(MAGIC.length) != VERSION) {
+            throw new FormatException(String.format("record log version %d unsupport", header.get(MAGIC.length)));
+        }
+    }
+
+    /**
+     * Resets crc and starts it with the record length, ready for the record bytes.
+     */
+    static CRC32 checksum(CRC32 crc, int len) {
+        crc.reset();
+        crc.update(len >>> 24);
+        crc.update(len >>> 16);
+        crc.update(len >>> 8);
+        crc.update(len);
+        return crc;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    /**
+     * Finds the end of the last complete record, starting from the last index entry that is
+     * inside the log, and drops everything after it. A record is complete when it fits in the log
+     * and its checksum matches; a zero-filled tail fails the checksum, so it is dropped too.
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        RecordLogReader.read(channel, header, 0);
+        checkHeader(header);
+
+        long[] entries = RecordLogReader.readIndex(index, size);
+        int n = entries.length / 2;
+        long recordNo = n == 0 ? 0 : entries[2 * (n - 1)];
+        long pos = n == 0 ? HEADER_LENGTH : entries[2 * (n - 1) + 1];
+        lastIndexed = n == 0 ? -1 : recordNo;
+        index.truncate((long) n * INDEX_ENTRY_LENGTH);
+
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        while (pos + RECORD_HEADER_LENGTH <= size) {
+            recordHeader.clear();
+            RecordLogReader.read(channel, recordHeader, pos);
+            int len = recordHeader.getInt(0);
+            long next = pos + RECORD_HEADER_LENGTH + len;
+            if (len < 0 || next > size || !checksumMatches(pos + RECORD_HEADER_LENGTH, len, recordHeader.getInt(4))) {
+                break;
+            }
+            if (recordNo % indexInterval == 0 && recordNo > lastIndexed) {
+                addIndexEntry(recordNo, pos);
+            }
+            pos = next;
+            recordNo++;
+        }
+        channel.truncate(pos);
+        flushIndex();
+        offset = pos;
+        recordCount = recordNo;
+    }
+
+    private boolean checksumMatches(long pos, int len, int checksum) throws IOException {
+        checksum(crc, len);
+        buffer.clear();
+        long end = pos + len;
+        while (pos < end) {
+            buffer.limit((int) Math.min(buffer.capacity(), end - pos));
+            RecordLogReader.read(channel, buffer, pos);
+            crc.update(buffer.array(), 0, buffer.limit());
+            pos += buffer.limit();
+            buffer.clear();
+        }
+        return (int) crc.getValue() == checksum;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("record log closed");
+        }
+    }
+
+    private static void close(Closeable... closeables) {
+        for (Closeable c : closeables) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        try {
+            sync();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                close(channel, index);
+            }
+        }
+    }
+}
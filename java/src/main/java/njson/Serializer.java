@@ -22,14 +22,24 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static njson.Code.*;
 
 public final class Serializer implements Serializable {
-    private static final int INIT_BUFF_SIZE = 1024 * 1024;
-
+    static final int INIT_BUFF_SIZE = 1024 * 1024;
+    private static final int PARALLEL_THRESHOLD = 8 * 1024;
+    private static final int MIN_SEGMENT_SIZE = 1024;
     private byte[] bytes;
 
     /**
@@ -37,6 +47,25 @@ public final class Serializer implements Serializable {
      */
     private BytesBuffer buffer;
 
+    private ExtensionRegistry extensions = ExtensionRegistry.DEFAULT;
+    private Metrics metrics = Metrics.NOOP;
+    private int depth;
+    private int maxDepth;
+
+    private boolean keyFilter;
+    private boolean exactDecimals;
+    /**
+     * whether the keys being packed are reachable by path, and the hash of the path of their map
+     */
+    private boolean collectKeys;
+    /**
+     * false once a raw map whose keys were not collected is packed below the root
+     */
+    private boolean keysComplete;
+    private long keyPath;
+    private long[] keyHashes;
+    private int keyCount;
+
     public Serializer() {
         this(INIT_BUFF_SIZE);
     }
@@ -53,9 +82,52 @@ public final class Serializer implements Serializable {
         buffer.init();
     }
 
+    /**
+     * Prepares the serializer for reuse by another owner, see {@link SerializerPool}.
+     */
+    void reset() {
+        buffer.init();
+        extensions = ExtensionRegistry.DEFAULT;
+        metrics = Metrics.NOOP;
+        keyFilter = false;
+        exactDecimals = false;
+    }
+
+    int capacity() {
+        return buffer.end() - buffer.offset();
+    }
+
+    public void setExtensionRegistry(ExtensionRegistry extensions) {
+        this.extensions = extensions;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Makes {@link #packJsonObject(Object)} write map documents of version
+     * {@link Code#SER_VERSION_KEY_FILTER}, with a Bloom filter of their key paths after the header
+     * that lets lookups of missing paths return without scanning. The filter costs about 10 bits
+     * per key, up to 64KB, and packing moves the body once to make room for it. Off by default.
+     */
+    public void setKeyFilter(boolean keyFilter) {
+        this.keyFilter = keyFilter;
+    }
+
+    /**
+     * Makes {@link #packJsonObject(Object)} write {@link BigDecimal} values as decimal extensions
+     * instead of converting them to long or double. Such values are read back with
+     * {@link Deserializer#getBigDecimal(String)}, not by the numeric getters. Off by default.
+     */
+    public void setExactDecimals(boolean exactDecimals) {
+        this.exactDecimals = exactDecimals;
+    }
+
     private void ensureCapacity(int minimumSize) throws IOException {
         if (minimumSize > buffer.remaining()) {
-            throw new IOException("not enough space");
+            metrics.bufferOverflow();
+            throw new NotEnoughSpaceException();
         }
     }
 
@@ -428,6 +500,214 @@ public final class Serializer implements Serializable {
         return this;
     }
 
+    /**
+     * Writes header of an Extension value.
+     * <p>
+     * This method writes the smallest format from the ext format family.
+     *
+     * @param extType    the extension type tag to be written
+     * @param payloadLen number of bytes of a payload binary to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packExtensionTypeHeader(byte extType, int payloadLen)
+            throws IOException {
+        if (payloadLen < (1 << 8)) {
+            if (payloadLen > 0 && (payloadLen & (payloadLen - 1)) == 0) { // check whether dataLen == 2^x
+                if (payloadLen == 1) {
+                    writeByteAndByte(FIXEXT1, extType);
+                } else if (payloadLen == 2) {
+                    writeByteAndByte(FIXEXT2, extType);
+                } else if (payloadLen == 4) {
+                    writeByteAndByte(FIXEXT4, extType);
+                } else if (payloadLen == 8) {
+                    writeByteAndByte(FIXEXT8, extType);
+                } else if (payloadLen == 16) {
+                    writeByteAndByte(FIXEXT16, extType);
+                } else {
+                    writeByteAndByte(EXT8, (byte) payloadLen);
+                    writeByte(extType);
+                }
+            } else {
+                writeByteAndByte(EXT8, (byte) payloadLen);
+                writeByte(extType);
+            }
+        } else if (payloadLen < (1 << 16)) {
+            writeByteAndShort(EXT16, (short) payloadLen);
+            writeByte(extType);
+        } else {
+            writeByteAndInt(EXT32, payloadLen);
+            writeByte(extType);
+        }
+        return this;
+    }
+
+    /**
+     * Writes payload bytes of a Binary, String or Extension value after its header.
+     *
+     * @param src    the data to be written
+     * @param offset the start offset in the data
+     * @param len    number of bytes to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer writePayload(byte[] src, int offset, int len)
+            throws IOException {
+        ensureCapacity(len);
+        buffer.put(src, offset, len);
+        return this;
+    }
+
+    /**
+     * Writes an Extension value using the given codec.
+     *
+     * @param codec the codec of the value's type
+     * @param v     the value to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public <T> Serializer packExtension(ExtensionCodec<T> codec, T v)
+            throws IOException {
+        int len = codec.getPayloadLength(v);
+        packExtensionTypeHeader(codec.getType(), len);
+        ensureCapacity(len);
+        int start = buffer.position();
+        codec.pack(v, buffer);
+        if (buffer.position() - start != len) {
+            throw new IllegalStateException(String.format("extension type %d wrote %d bytes, expected %d",
+                    codec.getType(), buffer.position() - start, len));
+        }
+        return this;
+    }
+
+    public Serializer packExtension(ExtensionValue v)
+            throws IOException {
+        packExtensionTypeHeader(v.getType(), v.getData().length);
+        return writePayload(v.getData(), 0, v.getData().length);
+    }
+
+    /**
+     * Writes a timestamp extension value of seconds and nanoseconds.
+     *
+     * @param v the instant to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packTimestamp(Instant v)
+            throws IOException {
+        return packExtension(extensions.forClass(Instant.class), v);
+    }
+
+    /**
+     * Writes an exact decimal extension value of scale and unscaled value.
+     *
+     * @param v the decimal to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packBigDecimal(BigDecimal v)
+            throws IOException {
+        return packExtension(extensions.forClass(BigDecimal.class), v);
+    }
+
+    /**
+     * Writes a 16 byte UUID extension value.
+     *
+     * @param v the uuid to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packUUID(UUID v)
+            throws IOException {
+        return packExtension(extensions.forClass(UUID.class), v);
+    }
+
+    /**
+     * Writes an int array as a single packed extension value.
+     * <p>
+     * The payload is a byte-order flag followed by the 4-byte elements, written with one bulk copy.
+     *
+     * @param v the array to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packIntArray(int[] v)
+            throws IOException {
+        return packIntArray(v, 0, v.length);
+    }
+
+    public Serializer packIntArray(int[] v, int offset, int length)
+            throws IOException {
+        packPackedArrayHeader(EXT_INT32_ARRAY, length, 4);
+        buffer.putInts(v, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes a long array as a single packed extension value of 8-byte elements.
+     *
+     * @param v the array to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packLongArray(long[] v)
+            throws IOException {
+        return packLongArray(v, 0, v.length);
+    }
+
+    public Serializer packLongArray(long[] v, int offset, int length)
+            throws IOException {
+        packPackedArrayHeader(EXT_INT64_ARRAY, length, 8);
+        buffer.putLongs(v, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes a float array as a single packed extension value of IEEE 754 single precision elements.
+     *
+     * @param v the array to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packFloatArray(float[] v)
+            throws IOException {
+        return packFloatArray(v, 0, v.length);
+    }
+
+    public Serializer packFloatArray(float[] v, int offset, int length)
+            throws IOException {
+        packPackedArrayHeader(EXT_FLOAT32_ARRAY, length, 4);
+        buffer.putFloats(v, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes a double array as a single packed extension value of IEEE 754 double precision elements.
+     *
+     * @param v the array to be written
+     * @return this
+     * @throws IOException when underlying output throws IOException
+     */
+    public Serializer packDoubleArray(double[] v)
+            throws IOException {
+        return packDoubleArray(v, 0, v.length);
+    }
+
+    public Serializer packDoubleArray(double[] v, int offset, int length)
+            throws IOException {
+        packPackedArrayHeader(EXT_FLOAT64_ARRAY, length, 8);
+        buffer.putDoubles(v, offset, length);
+        return this;
+    }
+
+    private void packPackedArrayHeader(byte extType, int length, int width)
+            throws IOException {
+        int payloadLen = 1 + length * width;
+        packExtensionTypeHeader(extType, payloadLen);
+        ensureCapacity(payloadLen);
+        buffer.put(setBigEndian((byte) 0, buffer.bigEndian()));
+    }
+
     public int reserveArrayHeader()
             throws IOException {
         writeByte(ARRAY32);
@@ -444,6 +724,65 @@ public final class Serializer implements Serializable {
         return pos;
     }
 
+    /**
+     * Fills in the body length of a container whose header was reserved at position by
+     * {@link #reserveArrayHeader()} or {@link #reserveMapHeader()}.
+     */
+    public Serializer closeContainer(int position) {
+        buffer.putInt(position, buffer.position() - position - 4);
+        return this;
+    }
+
+    /**
+     * Writes value, a single encoded value such as one returned by
+     * {@link Deserializer#getRaw(String)}, as is. A {@link Slice} inside a map or collection
+     * passed to {@link #packJsonObject(Object)} is written the same way. The value is not checked,
+     * and a raw map in a document packed with a {@link #setKeyFilter(boolean) key filter} makes it
+     * be written without one, since the keys of the map are not known.
+     */
+    public Serializer packRaw(Slice value) throws IOException {
+        if (collectKeys && containerType(value) == ValueType.MAP) {
+            keysComplete = false;
+        }
+        return writePayload(value.array(), value.offset(), value.length());
+    }
+
+    /**
+     * Writes a document whose root is the encoded map or array value, without a key filter.
+     */
+    public Serializer packDocument(Slice value) throws Exception {
+        if (containerType(value) == null) {
+            throw new FormatException("document root must be a map or an array");
+        }
+        int start = buffer.position();
+        packHeader();
+        packRaw(value);
+        // the depth of the raw value is not known without walking it
+        metrics.documentWritten(buffer.position() - start, 1);
+        return this;
+    }
+
+    /**
+     * Returns MAP or ARRAY if the encoded value is a container, otherwise null.
+     */
+    static ValueType containerType(Slice value) {
+        if (value.length() == 0) {
+            return null;
+        }
+        switch (Format.valueOf(value.array()[value.offset()])) {
+            case FIXMAP:
+            case MAP16:
+            case MAP32:
+                return ValueType.MAP;
+            case FIXARRAY:
+            case ARRAY16:
+            case ARRAY32:
+                return ValueType.ARRAY;
+            default:
+                return null;
+        }
+    }
+
     public Serializer packHeader() throws Exception {
         //pack version and bigendian
         writeByte(Code.SER_VERSION);
@@ -452,42 +791,216 @@ public final class Serializer implements Serializable {
     }
 
     public Serializer packJsonObject(Object v) throws Exception {
+        Tracing.Tracer tracer = Tracing.TRACER;
+        Object event = tracer != null ? tracer.beginPack() : null;
+        int start = buffer.position();
+        depth = 0;
+        maxDepth = 0;
         packHeader();
 
-        if (v instanceof Collection) {
-            packArray((Collection<Object>) v);
-        } else if (v instanceof Map) {
-            packMap((Map<String, Object>) v);
-        } else {
-            throw new Exception(String.format("unknown class:%s", v.getClass().getName()));
+        collectKeys = keyFilter && v instanceof Map;
+        keysComplete = true;
+        keyPath = 0;
+        keyCount = 0;
+        try {
+            if (v instanceof Collection) {
+                packArray((Collection<Object>) v);
+            } else if (v instanceof Map) {
+                packMap((Map<String, Object>) v);
+            } else {
+                throw new Exception(String.format("unknown class:%s", v.getClass().getName()));
+            }
+        } finally {
+            collectKeys = false;
+        }
+        if (keyFilter && v instanceof Map && keysComplete) {
+            insertKeyFilter(start);
         }
 
+        metrics.documentWritten(buffer.position() - start, maxDepth);
+        if (tracer != null) {
+            tracer.endPack(event, buffer.position() - start, maxDepth);
+        }
         return this;
     }
 
     public Serializer packArray(Collection<Object> objs) throws Exception {
         int position = reserveArrayHeader();
+        if (++depth > maxDepth) {
+            maxDepth = depth;
+        }
+        // lookups by path do not go through arrays
+        boolean collect = collectKeys;
+        collectKeys = false;
         for (Object v : objs) {
             packObject(v);
         }
+        collectKeys = collect;
+        depth--;
 
-        buffer.putInt(position, buffer.position() - position - 4);
-
-        return this;
+        return closeContainer(position);
     }
 
     public Serializer packMap(Map<String, Object> map) throws Exception {
         int position = reserveMapHeader();
-        for (String key : map.keySet()) {
-            packString(key);
-            packObject(map.get(key));
+        if (++depth > maxDepth) {
+            maxDepth = depth;
         }
+        if (collectKeys) {
+            long parent = keyPath;
+            for (String key : map.keySet()) {
+                int keyStart = buffer.position();
+                packString(key);
+                keyPath = addKey(parent, keyStart);
+                packObject(map.get(key));
+            }
+            keyPath = parent;
+        } else {
+            for (String key : map.keySet()) {
+                packString(key);
+                packObject(map.get(key));
+            }
+        }
+        depth--;
 
-        buffer.putInt(position, buffer.position() - position - 4);
+        return closeContainer(position);
+    }
+
+    /**
+     * Hashes the key just packed at keyStart below the path parent and records the hash.
+     */
+    private long addKey(long parent, int keyStart) {
+        byte[] array = buffer.array();
+        int off;
+        switch (Format.valueOf(array[keyStart])) {
+            case STR8:
+                off = keyStart + 2;
+                break;
+            case STR16:
+                off = keyStart + 3;
+                break;
+            case STR32:
+                off = keyStart + 5;
+                break;
+            default:
+                off = keyStart + 1;
+                break;
+        }
+        long hash = KeyFilter.extend(parent, array, off, buffer.position() - off);
+        if (keyHashes == null) {
+            keyHashes = new long[64];
+        } else if (keyCount == keyHashes.length) {
+            keyHashes = Arrays.copyOf(keyHashes, keyCount * 2);
+        }
+        keyHashes[keyCount++] = hash;
+        return hash;
+    }
+
+    /**
+     * Moves the body of the document packed from start to make room for the filter of the keys
+     * recorded while packing it, and marks the document as having one.
+     */
+    private void insertKeyFilter(int start) throws IOException {
+        int log2Bytes = KeyFilter.log2Bytes(keyCount);
+        int length = KeyFilter.PREFIX_LENGTH + (1 << log2Bytes);
+        ensureCapacity(length);
+        byte[] array = buffer.array();
+        int body = start + Code.HEADER_LENGTH;
+        int end = buffer.position();
+        System.arraycopy(array, body, array, body + length, end - body);
+        Arrays.fill(array, body, body + length, (byte) 0);
+        array[start] = Code.SER_VERSION_KEY_FILTER;
+        array[body] = (byte) KeyFilter.HASHES;
+        array[body + 1] = (byte) log2Bytes;
+        for (int i = 0; i < keyCount; i++) {
+            KeyFilter.add(array, body + KeyFilter.PREFIX_LENGTH, log2Bytes, keyHashes[i]);
+        }
+        buffer.position(end + length);
+    }
+
+    /**
+     * Packs v like {@link #packJsonObject(Object)}, packing a large root array or map on pool.
+     * With {@link #setKeyFilter(boolean) key filters} on, v is packed on the calling thread.
+     */
+    public Serializer packJsonObject(Object v, ForkJoinPool pool) throws Exception {
+        if (keyFilter) {
+            return packJsonObject(v);
+        }
+        Tracing.Tracer tracer = Tracing.TRACER;
+        Object event = tracer != null ? tracer.beginPack() : null;
+        int start = buffer.position();
+        depth = 0;
+        maxDepth = 0;
+        packHeader();
+
+        if (v instanceof Collection) {
+            packArray((Collection<Object>) v, pool);
+        } else if (v instanceof Map) {
+            packMap((Map<String, Object>) v, pool);
+        } else {
+            throw new Exception(String.format("unknown class:%s", v.getClass().getName()));
+        }
 
+        // containers packed in segments by other serializers are not counted in maxDepth
+        metrics.documentWritten(buffer.position() - start, Math.max(1, maxDepth));
+        if (tracer != null) {
+            tracer.endPack(event, buffer.position() - start, Math.max(1, maxDepth));
+        }
         return this;
     }
 
+    /**
+     * Packs a large collection on pool. The elements are split into segments, each packed by a
+     * worker into its own serializer, and the segments are copied in order after a single array
+     * header; this works because containers are prefixed by their byte length rather than their
+     * element count. Collections too small to benefit are packed on the calling thread.
+     */
+    public Serializer packArray(Collection<Object> objs, ForkJoinPool pool) throws Exception {
+        if (objs.size() < PARALLEL_THRESHOLD) {
+            return packArray(objs);
+        }
+        return packSegments(false, objs.toArray(), pool);
+    }
+
+    /**
+     * Packs a large map on pool, see {@link #packArray(Collection, ForkJoinPool)}.
+     */
+    public Serializer packMap(Map<String, Object> map, ForkJoinPool pool) throws Exception {
+        if (map.size() < PARALLEL_THRESHOLD) {
+            return packMap(map);
+        }
+        return packSegments(true, map.entrySet().toArray(), pool);
+    }
+
+    private Serializer packSegments(boolean map, Object[] items, ForkJoinPool pool) throws Exception {
+        int segmentSize = Math.max(MIN_SEGMENT_SIZE, items.length / (pool.getParallelism() * 4));
+        List<byte[]> segments;
+        try {
+            segments = pool.invoke(new SegmentTask(items, map, 0, items.length, segmentSize, extensions,
+                    exactDecimals));
+        } catch (CompletionException e) {
+            Throwable cause = e;
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+
+        int position = map ? reserveMapHeader() : reserveArrayHeader();
+        for (byte[] segment : segments) {
+            writePayload(segment, 0, segment.length);
+        }
+        return closeContainer(position);
+    }
+
+    /**
+     * Packs a single value of any type {@link #packJsonObject(Object)} accepts inside documents,
+     * without a header.
+     */
+    Serializer packValue(Object v) throws Exception {
+        return packObject(v);
+    }
+
     private Serializer packObject(Object v) throws Exception {
         if (v == null) {
             packNil();
@@ -510,7 +1023,9 @@ public final class Serializer implements Serializable {
                 packDouble((double) v);
             }
         } else if (v instanceof BigDecimal) {
-            if (((BigDecimal) v).doubleValue() == ((BigDecimal) v).longValue()) {
+            if (exactDecimals) {
+                packBigDecimal((BigDecimal) v);
+            } else if (((BigDecimal) v).doubleValue() == ((BigDecimal) v).longValue()) {
                 packLong(((BigDecimal) v).longValue());
             } else {
                 packDouble(((BigDecimal) v).doubleValue());
@@ -521,15 +1036,121 @@ public final class Serializer implements Serializable {
             packBoolean((Boolean) v);
         } else if (v instanceof Collection) {
             packArray((Collection<Object>) v);
+        } else if (v instanceof int[]) {
+            packIntArray((int[]) v);
+        } else if (v instanceof long[]) {
+            packLongArray((long[]) v);
+        } else if (v instanceof float[]) {
+            packFloatArray((float[]) v);
+        } else if (v instanceof double[]) {
+            packDoubleArray((double[]) v);
         } else if (v instanceof Map) {
             packMap((Map<String, Object>) v);
+        } else if (v instanceof ExtensionValue) {
+            packExtension((ExtensionValue) v);
+        } else if (v instanceof Slice) {
+            packRaw((Slice) v);
         } else {
-            throw new Exception(String.format("unknown class:%s", v.getClass().getName()));
+            ExtensionCodec<Object> codec = (ExtensionCodec<Object>) extensions.forClass(v.getClass());
+            if (codec == null) {
+                throw new Exception(String.format("unknown class:%s", v.getClass().getName()));
+            }
+            packExtension(codec, v);
         }
 
         return this;
     }
 
+    /**
+     * Packs the elements or map entries items[from, to) into segments of at most segmentSize items,
+     * halving a segment that does not fit into the worker's serializer.
+     */
+    private static final class SegmentTask extends RecursiveTask<List<byte[]>> {
+        private final Object[] items;
+        private final boolean map;
+        private final int from;
+        private final int to;
+        private final int segmentSize;
+        private final ExtensionRegistry extensions;
+        private final boolean exactDecimals;
+
+        SegmentTask(Object[] items, boolean map, int from, int to, int segmentSize, ExtensionRegistry extensions,
+                    boolean exactDecimals) {
+            this.items = items;
+            this.map = map;
+            this.from = from;
+            this.to = to;
+            this.segmentSize = segmentSize;
+            this.extensions = extensions;
+            this.exactDecimals = exactDecimals;
+        }
+
+        @Override
+        protected List<byte[]> compute() {
+            if (to - from > segmentSize) {
+                return split();
+            }
+
+            SerializerPool pool = SerializerPool.getDefault();
+            Serializer ser = pool.acquireSerializer();
+            try {
+                while (true) {
+                    try {
+                        return Collections.singletonList(pack(ser));
+                    } catch (NotEnoughSpaceException e) {
+                        if (to - from > 1) {
+                            return split();
+                        }
+                        // a single item larger than the buffer gets a larger serializer
+                        int capacity = ser.capacity();
+                        pool.release(ser);
+                        ser = pool.acquireSerializer(capacity * 2);
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                pool.release(ser);
+            }
+        }
+
+        private List<byte[]> split() {
+            int mid = (from + to) >>> 1;
+            SegmentTask left = new SegmentTask(items, map, from, mid, segmentSize, extensions, exactDecimals);
+            SegmentTask right = new SegmentTask(items, map, mid, to, segmentSize, extensions, exactDecimals);
+            left.fork();
+            List<byte[]> tail = right.compute();
+            List<byte[]> segments = new ArrayList<>(left.join());
+            segments.addAll(tail);
+            return segments;
+        }
+
+        @SuppressWarnings("unchecked")
+        private byte[] pack(Serializer ser) throws Exception {
+            ser.init();
+            ser.setExtensionRegistry(extensions);
+            ser.setExactDecimals(exactDecimals);
+            for (int i = from; i < to; i++) {
+                if (map) {
+                    Map.Entry<String, Object> entry = (Map.Entry<String, Object>) items[i];
+                    ser.packString(entry.getKey());
+                    ser.packObject(entry.getValue());
+                } else {
+                    ser.packObject(items[i]);
+                }
+            }
+            return ser.toBytes();
+        }
+    }
+
+    static final class NotEnoughSpaceException extends IOException {
+        NotEnoughSpaceException() {
+            super("not enough space");
+        }
+    }
+
     public byte[] toBytes() {
         return buffer.toBytes();
     }
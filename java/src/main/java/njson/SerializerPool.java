@@ -0,0 +1,239 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reuses Serializers and Deserializers, so that code packing or unpacking a few documents per
+ * request does not allocate new buffers every time.
+ * <pre>
+ *     Serializer ser = SerializerPool.getDefault().acquireSerializer();
+ *     try {
+ *         bytes = ser.packJsonObject(map).toBytes();
+ *     } finally {
+ *         SerializerPool.getDefault().release(ser);
+ *     }
+ * </pre>
+ * Serializers are pooled by size class, the capacity rounded down to a power of two between 4KB
+ * and 16MB; {@link #acquireSerializer(int)} rounds the minimum size up to a class. Each thread
+ * keeps the Serializer and the Deserializer it released last, and the others go to a pool shared
+ * by all threads that holds at most {@link #setMaxPooledBytes(long) max pooled bytes} of buffers.
+ * Serializers above the largest class and Serializers that do not fit are dropped, and the scratch
+ * buffers a Deserializer grew for long strings or keys are shrunk on release.
+ * <p>
+ * Instances are handed out reset, with the default extension registry and delimiter and the
+ * {@link #setMetrics(Metrics) metrics} of the pool. A released instance must not be used again,
+ * nor the buffers it returned views of.
+ */
+public final class SerializerPool {
+    private static final int MIN_SIZE_SHIFT = 12;
+    private static final int MAX_SIZE_SHIFT = 24;
+    private static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_POOLED_DESERIALIZERS = 256;
+
+    private static final SerializerPool DEFAULT = new SerializerPool();
+
+    private final ThreadLocal<Serializer> localSerializers = new ThreadLocal<>();
+    private final ThreadLocal<Deserializer> localDeserializers = new ThreadLocal<>();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentLinkedQueue<Serializer>[] serializers =
+            new ConcurrentLinkedQueue[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+    private final ConcurrentLinkedQueue<Deserializer> deserializers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong pooledDeserializers = new AtomicLong();
+    private volatile long maxPooledBytes = DEFAULT_MAX_POOLED_BYTES;
+    private volatile Metrics metrics = Metrics.NOOP;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    public SerializerPool() {
+        for (int i = 0; i < serializers.length; i++) {
+            serializers[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Returns the pool shared by the library and applications that have no reason for their own.
+     */
+    public static SerializerPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sets the maximum bytes of Serializer buffers held by the shared pool, not counting the
+     * instances kept by threads.
+     */
+    public void setMaxPooledBytes(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Sets the metrics of the instances handed out from now on.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a Serializer of the default size, as by {@link Serializer#Serializer()}.
+     */
+    public Serializer acquireSerializer() {
+        return acquireSerializer(Serializer.INIT_BUFF_SIZE);
+    }
+
+    /**
+     * Returns a Serializer of at least minimumSize bytes.
+     */
+    public Serializer acquireSerializer(int minimumSize) {
+        Serializer ser = acquire(minimumSize);
+        ser.setMetrics(metrics);
+        return ser;
+    }
+
+    private Serializer acquire(int minimumSize) {
+        int shift = minimumSize <= 1 << MIN_SIZE_SHIFT
+                ? MIN_SIZE_SHIFT : 32 - Integer.numberOfLeadingZeros(minimumSize - 1);
+        if (shift > MAX_SIZE_SHIFT) {
+            misses.increment();
+            return new Serializer(minimumSize);
+        }
+
+        Serializer ser = localSerializers.get();
+        if (ser != null && sizeClass(ser.capacity()) == shift) {
+            localSerializers.set(null);
+            hits.increment();
+            return ser;
+        }
+        ser = serializers[shift - MIN_SIZE_SHIFT].poll();
+        if (ser != null) {
+            pooledBytes.addAndGet(-footprint(ser));
+            hits.increment();
+            return ser;
+        }
+        misses.increment();
+        return new Serializer(1 << shift);
+    }
+
+    public void release(Serializer ser) {
+        // a buffer larger than the largest class, as acquired for oversized requests or grown
+        // while packing, is not kept even though it could serve that class
+        int capacity = ser.capacity();
+        if (capacity < 1 << MIN_SIZE_SHIFT || capacity > 1 << MAX_SIZE_SHIFT) {
+            drops.increment();
+            return;
+        }
+        ser.reset();
+        Serializer previous = localSerializers.get();
+        localSerializers.set(ser);
+        if (previous == null) {
+            return;
+        }
+        // the thread keeps the latest and passes the one it held on to the shared pool
+        int previousShift = sizeClass(previous.capacity());
+        long footprint = footprint(previous);
+        if (pooledBytes.addAndGet(footprint) > maxPooledBytes) {
+            pooledBytes.addAndGet(-footprint);
+            drops.increment();
+            return;
+        }
+        serializers[previousShift - MIN_SIZE_SHIFT].offer(previous);
+    }
+
+    public Deserializer acquireDeserializer() {
+        Deserializer deser = acquire();
+        deser.setMetrics(metrics);
+        return deser;
+    }
+
+    private Deserializer acquire() {
+        Deserializer deser = localDeserializers.get();
+        if (deser != null) {
+            localDeserializers.set(null);
+            hits.increment();
+            return deser;
+        }
+        deser = deserializers.poll();
+        if (deser != null) {
+            pooledDeserializers.decrementAndGet();
+            hits.increment();
+            return deser;
+        }
+        misses.increment();
+        return new Deserializer();
+    }
+
+    public void release(Deserializer deser) {
+        deser.reset();
+        Deserializer previous = localDeserializers.get();
+        localDeserializers.set(deser);
+        if (previous == null) {
+            return;
+        }
+        if (pooledDeserializers.incrementAndGet() > MAX_POOLED_DESERIALIZERS) {
+            pooledDeserializers.decrementAndGet();
+            drops.increment();
+            return;
+        }
+        deserializers.offer(previous);
+    }
+
+    /**
+     * Returns the number of acquires served by a pooled instance.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of acquires that allocated a new instance.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of released instances dropped because they were out of the size classes
+     * or the pool was full.
+     */
+    public long getDrops() {
+        return drops.sum();
+    }
+
+    /**
+     * Returns the bytes of Serializer buffers held by the shared pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Returns the class of a capacity, the largest shift with 1 &lt;&lt; shift &lt;= capacity.
+     */
+    private static int sizeClass(int capacity) {
+        return 31 - Integer.numberOfLeadingZeros(capacity);
+    }
+
+    private static long footprint(Serializer ser) {
+        // the buffer and the string scratch buffer of the same size
+        return 2L * ser.capacity();
+    }
+}
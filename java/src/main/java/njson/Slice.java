@@ -0,0 +1,59 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * A range of a byte array, shared rather than copied.
+ */
+public final class Slice {
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    public Slice(byte[] array) {
+        this(array, 0, array.length);
+    }
+
+    public Slice(byte[] array, int offset, int length) {
+        BytesBuffer.checkBounds(offset, length, array.length);
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int end() {
+        return offset + length;
+    }
+
+    public byte[] toBytes() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+}
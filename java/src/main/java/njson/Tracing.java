@@ -0,0 +1,58 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Hooks for tracing slow operations, off unless the njson.jfr system property is true. The tracer
+ * is then the Java Flight Recorder one, which is built on Java 11 and later; see JfrTracer.
+ * <p>
+ * {@link #TRACER} is null when tracing is off, and being a static final the JIT folds the checks
+ * of it away.
+ */
+final class Tracing {
+    static final Tracer TRACER = load();
+
+    interface Tracer {
+        /**
+         * Starts timing a {@link Serializer#packJsonObject(Object)} and returns its event.
+         */
+        Object beginPack();
+
+        void endPack(Object event, int bytes, int depth);
+
+        /**
+         * Starts timing a lookup by path and returns its event.
+         */
+        Object beginLookup();
+
+        void endLookup(Object event, String path, int documentBytes, int depth, int valuesSkipped, boolean found);
+    }
+
+    private Tracing() {
+    }
+
+    private static Tracer load() {
+        if (!Boolean.getBoolean("njson.jfr")) {
+            return null;
+        }
+        try {
+            return (Tracer) Class.forName("njson.JfrTracer").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Receives the value of a {@link Deserializer} tryGet lookup, so that the lookup can return a
+ * status instead of throwing. One holder can be reused for any number of lookups.
+ * <pre>
+ *     ValueHolder value = new ValueHolder();
+ *     if (deser.tryGetLong("user.id", value) == ValueHolder.FOUND) {
+ *         id = value.getLong();
+ *     }
+ * </pre>
+ */
+public final class ValueHolder {
+    public static final int FOUND = 0;
+    public static final int MISSING = 1;
+    public static final int NULL = 2;
+
+    long longValue;
+    double doubleValue;
+    boolean booleanValue;
+    String stringValue;
+
+    public long getLong() {
+        return longValue;
+    }
+
+    public double getDouble() {
+        return doubleValue;
+    }
+
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+
+    public String getString() {
+        return stringValue;
+    }
+}
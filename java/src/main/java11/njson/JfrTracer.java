@@ -0,0 +1,63 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Emits {@link PackEvent} and {@link LookupEvent} to Java Flight Recorder. Loaded by
+ * {@link Tracing} when started with -Dnjson.jfr=true; the events are recorded when enabled in the
+ * recording, as with -XX:StartFlightRecording:settings=profile or a custom .jfc.
+ */
+final class JfrTracer implements Tracing.Tracer {
+    @Override
+    public Object beginPack() {
+        PackEvent event = new PackEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endPack(Object e, int bytes, int depth) {
+        PackEvent event = (PackEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginLookup() {
+        LookupEvent event = new LookupEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endLookup(Object e, String path, int documentBytes, int depth, int valuesSkipped, boolean found) {
+        LookupEvent event = (LookupEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.documentBytes = documentBytes;
+            event.depth = depth;
+            event.valuesSkipped = valuesSkipped;
+            event.found = found;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A lookup by path that took longer than the threshold, 1 ms unless the recording settings say
+ * otherwise (njson.Lookup#threshold).
+ */
+@Name("njson.Lookup")
+@Label("njson Lookup")
+@Category("njson")
+@Description("Lookup of a value by path in an njson document")
+@Threshold("1 ms")
+@StackTrace(true)
+final class LookupEvent extends Event {
+    @Label("Path")
+    String path;
+
+    @Label("Document Size")
+    @DataAmount
+    int documentBytes;
+
+    @Label("Depth")
+    @Description("Path segments resolved")
+    int depth;
+
+    @Label("Values Skipped")
+    @Description("Values skipped over to get past keys that did not match")
+    int valuesSkipped;
+
+    @Label("Found")
+    boolean found;
+}
@@ -0,0 +1,46 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A {@link Serializer#packJsonObject(Object)} that took longer than the threshold, 1 ms unless the
+ * recording settings say otherwise (njson.Pack#threshold).
+ */
+@Name("njson.Pack")
+@Label("njson Pack")
+@Category("njson")
+@Description("Packing of a document into njson")
+@Threshold("1 ms")
+@StackTrace(true)
+final class PackEvent extends Event {
+    @Label("Document Size")
+    @DataAmount
+    int bytes;
+
+    @Label("Depth")
+    @Description("Deepest nesting of containers")
+    int depth;
+}
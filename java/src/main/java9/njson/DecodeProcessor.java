@@ -0,0 +1,245 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+
+/**
+ * Decodes a stream of njson documents published by another stage.
+ * <pre>
+ *     DecodeProcessor&lt;Long&gt; processor = new DecodeProcessor&lt;&gt;(deser -&gt; deser.getLong("seq"));
+ *     RecordPublisher.ofSlices(reader::next).subscribe(processor);
+ *     processor.subscribe(subscriber);
+ * </pre>
+ * Documents are requested from upstream in batches of {@link #setBatchSize(int) batch size}, and
+ * the next batch is requested when half of it has been delivered downstream, so that upstream
+ * sees one request per half batch instead of one per document. No more than a batch of documents
+ * is requested and not yet delivered, however slow the subscriber is.
+ * <p>
+ * Documents are decoded on the thread that delivers them, with one Deserializer reused for all of
+ * them: decoders must not keep it or views of it. The processor accepts a single subscriber.
+ */
+public final class DecodeProcessor<T> implements Flow.Processor<Slice, T> {
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final DecodePipeline.Decoder<T> decoder;
+    private final Deserializer deser = new Deserializer();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    // guarded by this
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super T> downstream;
+    private long demand;
+    /**
+     * documents requested from upstream and not yet received
+     */
+    private long outstanding;
+    private boolean done;
+    private Throwable error;
+    private boolean cancelled;
+    private boolean draining;
+
+    public DecodeProcessor(DecodePipeline.Decoder<T> decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Sets the number of documents requested from upstream at once. Must be called before
+     * subscribing to upstream.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setExtensionRegistry(ExtensionRegistry extensions) {
+        deser.setExtensionRegistry(extensions);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        synchronized (this) {
+            if (downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("decode processor accepts one subscriber"));
+                return;
+            }
+            downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                synchronized (DecodeProcessor.this) {
+                    if (n <= 0) {
+                        done = true;
+                        error = new IllegalArgumentException("non-positive request " + n);
+                        queue.clear();
+                    } else {
+                        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    }
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                Flow.Subscription s;
+                synchronized (DecodeProcessor.this) {
+                    cancelled = true;
+                    queue.clear();
+                    s = upstream;
+                }
+                if (s != null) {
+                    s.cancel();
+                }
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(Slice document) {
+        T value;
+        try {
+            deser.init(document);
+            value = decoder.decode(deser);
+        } catch (Exception e) {
+            Flow.Subscription s;
+            synchronized (this) {
+                s = upstream;
+                done = true;
+                error = e;
+            }
+            s.cancel();
+            drain();
+            return;
+        }
+        synchronized (this) {
+            outstanding--;
+            if (done || cancelled) {
+                return;
+            }
+            queue.add(value);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            error = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            done = true;
+        }
+        drain();
+    }
+
+    /**
+     * Delivers queued documents while there is demand, then tops up the upstream request. Only one
+     * thread drains at a time; signals arriving meanwhile are picked up by its next round.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            T value = null;
+            boolean terminate = false;
+            Throwable failure = null;
+            long request = 0;
+            Flow.Subscriber<? super T> subscriber;
+            Flow.Subscription s;
+            synchronized (this) {
+                subscriber = downstream;
+                s = upstream;
+                if (cancelled || subscriber == null) {
+                    draining = false;
+                    return;
+                }
+                if (demand > 0 && !queue.isEmpty()) {
+                    value = queue.poll();
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                } else if (done && (queue.isEmpty() || error != null)) {
+                    terminate = true;
+                    failure = error;
+                    cancelled = true;
+                } else {
+                    long buffered = outstanding + queue.size();
+                    if (s != null && !done && buffered <= batchSize / 2) {
+                        request = batchSize - buffered;
+                        outstanding += request;
+                    }
+                    if (request == 0) {
+                        draining = false;
+                        return;
+                    }
+                }
+            }
+            if (value != null) {
+                subscriber.onNext(value);
+            } else if (terminate) {
+                if (failure != null) {
+                    subscriber.onError(failure);
+                } else {
+                    subscriber.onComplete();
+                }
+                return;
+            } else {
+                s.request(request);
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Publishes the records of a source, decoded, as they are requested.
+ * <pre>
+ *     RecordLogReader reader = new RecordLogReader(path);
+ *     RecordPublisher&lt;Long&gt; publisher = new RecordPublisher&lt;&gt;(reader::next, deser -&gt; deser.getLong("seq"));
+ *     publisher.subscribe(subscriber);
+ * </pre>
+ * Records are read only when the subscriber has demand for them, so a slow subscriber holds back
+ * the reads instead of letting decoded records pile up. Reading and decoding run on the executor,
+ * at most {@link #setBatchSize(int) batch size} records per task, and one Deserializer is reused
+ * for all records: decoders must not keep it or views of it.
+ * <p>
+ * A source can be read once, so a publisher accepts a single subscriber; later subscribers are
+ * signalled an IllegalStateException. The source is not closed by the publisher.
+ */
+public final class RecordPublisher<T> implements Flow.Publisher<T> {
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Supplies the records of a stream, one at a time.
+     */
+    public interface RecordSource {
+        /**
+         * Returns the next record, or null at the end of the stream.
+         */
+        byte[] next() throws IOException;
+    }
+
+    private final RecordSource source;
+    private final DecodePipeline.Decoder<T> decoder;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private ExtensionRegistry extensions = ExtensionRegistry.DEFAULT;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public RecordPublisher(RecordSource source, DecodePipeline.Decoder<T> decoder) {
+        this(source, decoder, ForkJoinPool.commonPool());
+    }
+
+    public RecordPublisher(RecordSource source, DecodePipeline.Decoder<T> decoder, Executor executor) {
+        this.source = source;
+        this.decoder = decoder;
+        this.executor = executor;
+    }
+
+    /**
+     * Publishes the records undecoded, for subscribers that decode them later or pass them on.
+     */
+    public static RecordPublisher<Slice> ofSlices(RecordSource source) {
+        return new RecordPublisher<>(source, null);
+    }
+
+    /**
+     * Returns a source reading the records of a {@link RecordLogWriter record log} from a channel
+     * positioned at the start of the log, such as a file channel just opened. The file header is
+     * checked first, then every record is read with its length and checksum; a record whose
+     * checksum does not match throws FormatException.
+     */
+    public static RecordSource fromChannel(final ReadableByteChannel channel) {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.limit(0);
+        return new RecordSource() {
+            private final CRC32 crc = new CRC32();
+            private boolean headerRead;
+
+            @Override
+            public byte[] next() throws IOException {
+                if (!headerRead) {
+                    if (!fill(RecordLogWriter.HEADER_LENGTH)) {
+                        throw new EOFException("record log header missing");
+                    }
+                    RecordLogWriter.checkHeader(buffer.slice());
+                    buffer.position(buffer.position() + RecordLogWriter.HEADER_LENGTH);
+                    headerRead = true;
+                }
+                if (!fill(RecordLogWriter.RECORD_HEADER_LENGTH)) {
+                    return null;
+                }
+                int len = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (len < 0) {
+                    throw new FormatException("record length " + len);
+                }
+                byte[] record = new byte[len];
+                int n = Math.min(record.length, buffer.remaining());
+                buffer.get(record, 0, n);
+                ByteBuffer rest = ByteBuffer.wrap(record, n, record.length - n);
+                while (rest.hasRemaining()) {
+                    if (channel.read(rest) < 0) {
+                        throw new EOFException("record truncated");
+                    }
+                }
+                RecordLogWriter.checksum(crc, len).update(record, 0, len);
+                if ((int) crc.getValue() != checksum) {
+                    throw new FormatException("record checksum mismatch");
+                }
+                return record;
+            }
+
+            /**
+             * Reads until at least n bytes are buffered; returns false at a clean end of stream.
+             */
+            private boolean fill(int n) throws IOException {
+                if (buffer.remaining() >= n) {
+                    return true;
+                }
+                buffer.compact();
+                while (buffer.position() < n) {
+                    if (channel.read(buffer) < 0) {
+                        buffer.flip();
+                        if (buffer.hasRemaining()) {
+                            throw new EOFException("record truncated");
+                        }
+                        return false;
+                    }
+                }
+                buffer.flip();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sets the maximum number of records read and delivered by one executor task, after which the
+     * task yields the thread and continues in a new task. Must be called before subscribe.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setExtensionRegistry(ExtensionRegistry extensions) {
+        this.extensions = extensions;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("record publisher accepts one subscriber"));
+            return;
+        }
+        RecordSubscription subscription = new RecordSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class RecordSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Deserializer deser = new Deserializer();
+        private final AtomicLong demand = new AtomicLong();
+        /**
+         * number of signals to the drain loop not yet seen by it; the loop runs while positive
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        RecordSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            deser.setExtensionRegistry(extensions);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = wip.get();
+            int emitted = 0;
+            while (true) {
+                if (cancelled) {
+                    return;
+                }
+                if (invalidRequest != null) {
+                    cancelled = true;
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                long requested = demand.get();
+                while (requested > 0 && emitted < batchSize && !cancelled) {
+                    T value;
+                    try {
+                        byte[] record = source.next();
+                        if (record == null) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                        value = decode(record);
+                    } catch (Throwable e) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                        return;
+                    }
+                    subscriber.onNext(value);
+                    emitted++;
+                    if (requested != Long.MAX_VALUE) {
+                        requested = demand.decrementAndGet();
+                    }
+                }
+                if (emitted == batchSize && requested > 0) {
+                    // keep wip positive so concurrent requests do not start a second loop
+                    executor.execute(this);
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T decode(byte[] record) throws Exception {
+            if (decoder == null) {
+                return (T) new Slice(record);
+            }
+            deser.init(record);
+            return decoder.decode(deser);
+        }
+    }
+}
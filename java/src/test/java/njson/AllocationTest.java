@@ -0,0 +1,143 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Upper bounds on the bytes allocated per operation of the hot paths, measured with the allocation
+ * counter of the current thread after a warmup long enough for the JIT to compile them. Lowering
+ * a bound after an optimization is welcome; raising one needs a reason.
+ */
+public class AllocationTest {
+  private static final int WARMUP = 50000;
+  private static final int ITERATIONS = 10000;
+  private static final int ROUNDS = 5;
+
+  private static com.sun.management.ThreadMXBean threads;
+  private static Map<String, Object> map;
+  private static byte[] bytes;
+
+  interface Operation {
+    void run() throws Exception;
+  }
+
+  @BeforeAll
+  static void setup() throws Exception {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "allocation counters unsupported");
+    threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported(), "allocation counters unsupported");
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    Map<String, Object> meta = new HashMap<>();
+    meta.put("name", "foo bar");
+    meta.put("score", 0.5);
+    map = new HashMap<>();
+    map.put("int", 1);
+    map.put("string", "foo bar");
+    map.put("meta", meta);
+    map.put("list", Arrays.asList(1, 2, 3, "foo"));
+    for (int i = 0; i < 20; i++) {
+      map.put("key" + i, i * 1.5);
+    }
+    bytes = new Serializer(4096).packJsonObject(map).toBytes();
+  }
+
+  /**
+   * Returns the fewest bytes per operation over several rounds, so that a collection or a
+   * compilation in one round does not fail the test.
+   */
+  private static double bytesPerOperation(Operation operation) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      operation.run();
+    }
+    long thread = Thread.currentThread().getId();
+    double min = Double.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long before = threads.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < ITERATIONS; i++) {
+        operation.run();
+      }
+      min = Math.min(min, (threads.getThreadAllocatedBytes(thread) - before) / (double) ITERATIONS);
+    }
+    return min;
+  }
+
+  private static void assertAtMost(String name, long limit, Operation operation) throws Exception {
+    double allocated = bytesPerOperation(operation);
+    System.out.format("%s: %.1f bytes/op\n", name, allocated);
+    assertTrue(allocated <= limit, String.format("%s allocates %.1f bytes/op, limit %d", name, allocated, limit));
+  }
+
+  @Test
+  void testLookup() throws Exception {
+    final Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    assertAtMost("getInt", 8, () -> deser.getInt("int"));
+    assertAtMost("getDouble", 8, () -> deser.getDouble("key19"));
+    // the String itself
+    assertAtMost("getString", 64, () -> deser.getString("meta.name"));
+  }
+
+  @Test
+  void testMissingLookup() throws Exception {
+    final Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    final ValueHolder value = new ValueHolder();
+    assertAtMost("getIntOr", 8, () -> deser.getIntOr("missing", 0));
+    assertAtMost("tryGetLong", 8, () -> deser.tryGetLong("meta.missing", value));
+    // the exception, without a stack trace
+    assertAtMost("getInt", 64, () -> {
+      try {
+        deser.getInt("missing");
+      } catch (NotFoundException e) {
+        // expected
+      }
+    });
+  }
+
+  @Test
+  void testPackMap() throws Exception {
+    final Serializer ser = new Serializer(4096);
+    // the iterators of the two maps and the list: run after other suites, the loops in packMap and
+    // packArray have seen other collection types and the JIT no longer removes them
+    assertAtMost("packMap", 128, () -> {
+      ser.init();
+      ser.packJsonObject(map);
+    });
+  }
+
+  @Test
+  void testSkipValue() throws Exception {
+    final Deserializer deser = new Deserializer();
+    assertAtMost("skipValue", 8, () -> {
+      deser.init(bytes);
+      deser.skipValue();
+    });
+  }
+}
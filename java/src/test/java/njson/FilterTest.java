@@ -0,0 +1,131 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FilterTest {
+  private static Deserializer document() throws Exception {
+    Map<String, Object> user = new HashMap<>();
+    user.put("id", 7);
+    user.put("name", "ann");
+    Map<String, Object> map = new HashMap<>();
+    map.put("status", "ok");
+    map.put("latency", 250);
+    map.put("ratio", 0.5);
+    map.put("active", true);
+    map.put("nothing", null);
+    map.put("tags", Arrays.asList("a", "b"));
+    map.put("user", user);
+    map.put("a.b", 1);
+    map.put("quote", "say \"hi\"\n\t\u00e9/\\\ud83d\ude00");
+    Deserializer deser = new Deserializer();
+    deser.init(new Serializer(1024).packJsonObject(map).toBytes());
+    return deser;
+  }
+
+  private static boolean matches(String expression) throws Exception {
+    return Filter.compile(expression).matches(document());
+  }
+
+  @Test
+  void testPrecedence() throws Exception {
+    assertTrue(matches("latency == 1 && active == false || status == \"ok\""));
+    assertTrue(matches("status == \"ok\" || latency == 1 && active == false"));
+    assertFalse(matches("(status == \"ok\" || latency == 1) && active == false"));
+    assertFalse(matches("!status == \"ok\" || latency == 1"));
+    assertTrue(matches("!(status == \"ok\" && latency == 1)"));
+    assertTrue(matches("!!active == true"));
+    assertTrue(matches("((latency > 100)) && (user.id == 7 || user.name == \"bob\")"));
+  }
+
+  @Test
+  void testNil() throws Exception {
+    assertTrue(matches("nothing == null"));
+    assertTrue(matches("missing == null"));
+    assertTrue(matches("user.missing == null"));
+    assertFalse(matches("status == null"));
+    assertFalse(matches("nothing != null"));
+    assertTrue(matches("status != null"));
+    assertFalse(matches("missing == 0"));
+    assertTrue(matches("missing != 0"));
+    assertFalse(matches("missing < 1"));
+    assertFalse(matches("missing >= 1"));
+    assertFalse(matches("nothing > \"\""));
+    assertTrue(matches("nothing != \"\""));
+  }
+
+  @Test
+  void testNumbers() throws Exception {
+    assertTrue(matches("latency == 250"));
+    assertTrue(matches("latency == 250.0"));
+    assertTrue(matches("latency > 249.5 && latency < 250.5"));
+    assertTrue(matches("latency >= 250 && latency <= 250"));
+    assertTrue(matches("ratio == 0.5 && ratio > 0 && ratio < 1"));
+    assertTrue(matches("ratio >= 5e-1"));
+    assertTrue(matches("user.id != -7"));
+    assertFalse(matches("status > 1"));
+    assertFalse(matches("latency == \"250\""));
+    assertFalse(matches("active > 0"));
+  }
+
+  @Test
+  void testStrings() throws Exception {
+    assertTrue(matches("status == \"ok\""));
+    assertTrue(matches("status != \"ko\""));
+    assertTrue(matches("status > \"o\" && status < \"p\""));
+    assertTrue(matches("status >= \"ok\" && status <= \"ok\""));
+    assertFalse(matches("status < \"ok\""));
+    assertTrue(matches("user.name < \"anna\""));
+  }
+
+  @Test
+  void testEscapes() throws Exception {
+    assertTrue(matches("quote == \"say \\\"hi\\\"\\n\\t\u00e9\\/\\\\\\ud83d\\ude00\""));
+    assertTrue(matches("quote == \"\\u0073ay \\\"hi\\\"\\u000A\\u0009\\u00E9/\\\\\ud83d\ude00\""));
+    assertFalse(matches("quote == \"say \\\"hi\\\"nt\u00e9/\\\\\ud83d\ude00\""));
+    assertTrue(matches("user.name == \"\\u0061nn\""));
+    for (String expression : new String[] {"user.name == \"\\ann\"", "user.name == \"\\x61nn\"",
+        "user.name == \"\\u06\"", "user.name == \"\\u006g\"", "user.name == \"ann\\"}) {
+      assertThrows(IllegalArgumentException.class, () -> Filter.compile(expression));
+    }
+  }
+
+  @Test
+  void testQuotedPaths() throws Exception {
+    assertTrue(matches("`a.b` == 1"));
+    assertFalse(matches("a.b == 1"));
+    assertTrue(matches("`user`.`id` == 7 && user.`name` == \"ann\""));
+  }
+
+  @Test
+  void testParseErrors() throws Exception {
+    for (String expression : new String[] {"", "status", "status ==", "status = 1", "== 1", "(status == 1",
+        "status == 1)", "status == 1 &&", "status == \"ok", "`status == 1", "status < null", "latency == 1x",
+        "status == 1 status == 2", "user. == 1", "status == ok"}) {
+      assertThrows(IllegalArgumentException.class, () -> Filter.compile(expression));
+    }
+  }
+}
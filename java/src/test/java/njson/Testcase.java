@@ -20,12 +20,34 @@ package njson;
 import com.google.gson.Gson;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class Testcase {
   @Test
@@ -72,6 +94,1073 @@ public class Testcase {
     System.out.format("strlen:%d,byteslen:%d\n", key.length(), bytes.length);
   }
 
+  @Test
+  void testCompact() throws Exception {
+    Gson gson = new Gson();
+    String json = "{\"int\": 1,\"float\": 0.5,\"boolean\":true,\"null\":null,\"string\":\"foo bar\",\"array\":[1,2,3],\"object\": {\"foo\": 1,\"baz\": 0.5}}";
+    Map<String, Object> map = gson.fromJson(json, Map.class);
+    byte[] bytes = new Serializer().packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    CompactMap compact = (CompactMap) deser.unpackCompact();
+    System.out.format("size:%d\n", compact.size());
+    System.out.format("int:%d\n", compact.getLong("int"));
+    System.out.format("float:%f\n", compact.getDouble("float"));
+    System.out.format("boolean:%b\n", compact.getBoolean("boolean"));
+    System.out.format("string:%s\n", compact.getString("string"));
+    System.out.format("array:%d\n", compact.getList("array").getLong(2));
+    System.out.format("object.baz:%f\n", compact.getMap("object").getDouble("baz"));
+  }
+
+  @Test
+  void testPackedArray() throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    double[] values = new double[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i * 0.5;
+    }
+    map.put("packed", values);
+    map.put("list", Arrays.asList(1, 2, 3, 4));
+    byte[] bytes = new Serializer().packJsonObject(map).toBytes();
+    System.out.format("packLen:%d\n", bytes.length);
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    System.out.format("packed[999]:%f\n", deser.getDoubleArray("packed")[999]);
+    System.out.format("packed view[10]:%f\n", deser.getDoubleBuffer("packed").get(10));
+    System.out.format("list:%s\n", Arrays.toString(deser.getLongArray("list")));
+  }
+
+  @Test
+  void testArrayGetters() throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    map.put("ints", new int[] {1, -2, 300, 70000});
+    map.put("longs", new long[] {1L, -2L, 5000000000L});
+    map.put("doubles", new double[] {0.5, -1.25});
+    map.put("small", Arrays.asList(1, 2, 3));
+    map.put("shorts", Arrays.asList(1000, -1000, 2000));
+    map.put("mixed", Arrays.asList(1, -200, 70000, -5));
+    map.put("wide", Arrays.asList(1, 5000000000L, -7));
+    map.put("reals", Arrays.asList(0.5, 2, -1.5));
+    map.put("empty", new ArrayList<>());
+    byte[] bytes = new Serializer().packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    assertArrayEquals(new int[] {1, -2, 300, 70000}, deser.getIntArray("ints"));
+    assertArrayEquals(new long[] {1L, -2L, 5000000000L}, deser.getLongArray("longs"));
+    assertArrayEquals(new double[] {0.5, -1.25}, deser.getDoubleArray("doubles"));
+    assertArrayEquals(new int[] {1, 2, 3}, deser.getIntArray("small"));
+    assertArrayEquals(new long[] {1000, -1000, 2000}, deser.getLongArray("shorts"));
+    assertArrayEquals(new int[] {1, -200, 70000, -5}, deser.getIntArray("mixed"));
+    assertArrayEquals(new long[] {1, 5000000000L, -7}, deser.getLongArray("wide"));
+    assertArrayEquals(new double[] {0.5, 2, -1.5}, deser.getDoubleArray("reals"));
+    assertArrayEquals(new double[] {1, 2, 3}, deser.getDoubleArray("small"));
+    assertArrayEquals(new int[0], deser.getIntArray("empty"));
+
+    int[] ints = new int[8];
+    assertEquals(4, deser.getIntArray("mixed", ints));
+    assertArrayEquals(new int[] {1, -200, 70000, -5, 0, 0, 0, 0}, ints);
+    assertEquals(4, deser.getIntArray("ints", ints));
+    assertEquals(70000, ints[3]);
+    long[] longs = new long[3];
+    assertEquals(3, deser.getLongArray("wide", longs));
+    assertArrayEquals(new long[] {1, 5000000000L, -7}, longs);
+    assertEquals(3, deser.getLongArray("longs", longs));
+    assertEquals(5000000000L, longs[2]);
+    double[] doubles = new double[2];
+    assertEquals(2, deser.getDoubleArray("doubles", doubles));
+    assertArrayEquals(new double[] {0.5, -1.25}, doubles);
+    assertThrows(IndexOutOfBoundsException.class, () -> deser.getDoubleArray("reals", doubles));
+    assertThrows(NotFoundException.class, () -> deser.getIntArray("missing"));
+
+    assertEquals(300, deser.getIntBuffer("ints").get(2));
+    assertEquals(5000000000L, deser.getLongBuffer("longs").get(2));
+    assertEquals(-1.25, deser.getDoubleBuffer("doubles").get(1), 1e-9);
+  }
+
+  @Test
+  void testExtensions() throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    map.put("ts32", Instant.ofEpochSecond(1500000000L));
+    map.put("ts64", Instant.ofEpochSecond(1500000000L, 123456789));
+    map.put("ts96", Instant.ofEpochSecond(-1L, 5));
+    map.put("tsMax", Instant.ofEpochSecond(1L << 40, 999999999));
+    map.put("dec", new BigDecimal("12345.6789"));
+    map.put("bigDec", new BigDecimal("-123456789012345678901234567890.5"));
+    map.put("uuid", new UUID(0x0123456789abcdefL, 0xfedcba9876543210L));
+    map.put("unknown", new ExtensionValue((byte) 9, new byte[] {1, 2, 3}));
+    Serializer ser = new Serializer(1024);
+    ser.setExactDecimals(true);
+    byte[] bytes = ser.packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    for (String key : new String[] {"ts32", "ts64", "ts96", "tsMax"}) {
+      assertEquals(map.get(key), deser.getInstant(key), key);
+    }
+    assertEquals(map.get("dec"), deser.getBigDecimal("dec"));
+    assertEquals(map.get("bigDec"), deser.getBigDecimal("bigDec"));
+    assertEquals(map.get("uuid"), deser.getUUID("uuid"));
+    assertEquals(map.get("unknown"), deser.getObject("unknown"));
+    deser.init(bytes);
+    assertEquals(map, deser.unpackJsonObject());
+
+    ExtensionRegistry.TimestampCodec codec = new ExtensionRegistry.TimestampCodec();
+    assertEquals(4, codec.getPayloadLength((Instant) map.get("ts32")));
+    assertEquals(8, codec.getPayloadLength((Instant) map.get("ts64")));
+    assertEquals(12, codec.getPayloadLength((Instant) map.get("ts96")));
+    assertEquals(12, codec.getPayloadLength((Instant) map.get("tsMax")));
+  }
+
+  @Test
+  void testDecimalDefault() throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    map.put("whole", new BigDecimal("42"));
+    map.put("frac", new BigDecimal("0.25"));
+    Deserializer deser = deserOf(map, false);
+    assertEquals(42, deser.getInt("whole"));
+    assertEquals(0.25, deser.getDouble("frac"), 1e-9);
+    assertEquals(new BigDecimal("42"), deser.getBigDecimal("whole"));
+
+    deser = deserOf(map, true);
+    assertEquals(new BigDecimal("0.25"), deser.getBigDecimal("frac"));
+  }
+
+  private static Deserializer deserOf(Map<String, Object> map, boolean exactDecimals) throws Exception {
+    Serializer ser = new Serializer(256);
+    ser.setExactDecimals(exactDecimals);
+    Deserializer deser = new Deserializer();
+    deser.init(ser.packJsonObject(map).toBytes());
+    return deser;
+  }
+
+  static final class Point {
+    final int x;
+    final int y;
+
+    Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * x + y;
+    }
+  }
+
+  static final class PointCodec implements ExtensionCodec<Point> {
+    private final byte type;
+
+    PointCodec(int type) {
+      this.type = (byte) type;
+    }
+
+    @Override
+    public byte getType() {
+      return type;
+    }
+
+    @Override
+    public Class<Point> getJavaType() {
+      return Point.class;
+    }
+
+    @Override
+    public int getPayloadLength(Point v) {
+      return 8;
+    }
+
+    @Override
+    public void pack(Point v, BytesBuffer buffer) {
+      buffer.putInt(v.x);
+      buffer.putInt(v.y);
+    }
+
+    @Override
+    public Point unpack(BytesBuffer buffer, int pos, int len) {
+      return new Point(buffer.getInt(pos), buffer.getInt(pos + 4));
+    }
+  }
+
+  @Test
+  void testExtensionRegistry() throws Exception {
+    ExtensionRegistry registry = new ExtensionRegistry().register(new PointCodec(1));
+    Map<String, Object> map = new HashMap<>();
+    map.put("p", new Point(3, -4));
+    Serializer ser = new Serializer(256);
+    ser.setExtensionRegistry(registry);
+    byte[] bytes = ser.packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.setExtensionRegistry(registry);
+    deser.init(bytes);
+    assertEquals(new Point(3, -4), deser.getObject("p"));
+
+    deser = new Deserializer();
+    deser.init(bytes);
+    Object unknown = deser.getObject("p");
+    assertEquals((byte) 1, ((ExtensionValue) unknown).getType());
+    ser.init();
+    deser.init(ser.packJsonObject(Collections.singletonMap("p", unknown)).toBytes());
+    deser.setExtensionRegistry(registry);
+    assertEquals(new Point(3, -4), deser.getObject("p"));
+
+    for (byte type : new byte[] {Code.EXT_TIMESTAMP, Code.EXT_DECIMAL, Code.EXT_UUID, Code.EXT_INT32_ARRAY,
+        Code.EXT_FLOAT64_ARRAY, -128}) {
+      assertThrows(IllegalArgumentException.class, () -> new ExtensionRegistry().register(new PointCodec(type)));
+    }
+    assertThrows(UnsupportedOperationException.class, () -> ExtensionRegistry.DEFAULT.register(new PointCodec(1)));
+  }
+
+  @Test
+  void testProjection() throws Exception {
+    Gson gson = new Gson();
+    String json = "{\"user\":{\"id\":7,\"name\":\"foo\"},\"items\":[{\"id\":1,\"price\":0.5},{\"id\":2,\"price\":1.5}],\"string\":\"foo bar\"}";
+    Map<String, Object> map = gson.fromJson(json, Map.class);
+    byte[] bytes = new Serializer().packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    Object obj = deser.unpackProjection(FieldMask.of("user.id", "items.price"));
+    System.out.format("projection:%s\n", gson.toJson(obj));
+  }
+
+  @Test
+  void testColumnExtractor() throws Exception {
+    Gson gson = new Gson();
+    String[] jsons = new String[]{"{\"user\":{\"id\":7,\"name\":\"foo\"},\"latency\":0.5}", "{\"user\":{\"id\":8}}", "{\"user\":{\"id\":9,\"name\":\"bar\"},\"latency\":2}"};
+    List<Slice> docs = new ArrayList<>();
+    for (String json : jsons) {
+      docs.add(new Slice(new Serializer().packJsonObject(gson.fromJson(json, Map.class)).toBytes()));
+    }
+
+    ColumnExtractor extractor = new ColumnExtractor();
+    int id = extractor.addLongColumn("user.id");
+    int name = extractor.addStringColumn("user.name");
+    int latency = extractor.addDoubleColumn("latency");
+    ColumnBatch batch = extractor.extract(docs);
+    for (int i = 0; i < batch.size(); i++) {
+      System.out.format("row %d: id:%d name:%s latency:%s\n", i, batch.getLongs(id)[i], batch.getString(name, i),
+          batch.isNull(latency, i) ? "null" : String.valueOf(batch.getDoubles(latency)[i]));
+    }
+  }
+
+  @Test
+  void testColumnar() throws Exception {
+    Gson gson = new Gson();
+    String[] jsons = new String[]{"{\"id\":1,\"tags\":[\"a\",\"b\"],\"items\":[{\"price\":0.5},{\"price\":1.5}]}", "{\"id\":2,\"tags\":[]}", "{\"id\":3,\"items\":[{\"price\":2.5,\"qty\":2}]}",
+        "{\"a.b\":1,\"a\":{\"b\":2}}", "{\"x[]\":\"key\",\"x\":[[3],[]],\"a\":{\"b.c\":null}}"};
+    Path path = Files.createTempFile("njson", ".col");
+    List<Object> expected = new ArrayList<>();
+    try (ColumnarWriter writer = new ColumnarWriter(Files.newOutputStream(path))) {
+      for (String json : jsons) {
+        byte[] bytes = new Serializer().packJsonObject(gson.fromJson(json, Map.class)).toBytes();
+        expected.add(decode(bytes));
+        writer.write(bytes);
+      }
+    }
+
+    try (ColumnarReader reader = new ColumnarReader(path)) {
+      assertTrue(reader.getColumnPaths(0).contains("items[].price"));
+      assertEquals(Arrays.asList(0.5, 1.5, 2.5), reader.readValues("items[].price"));
+      assertEquals(1L, ((Number) reader.readColumn(0, Collections.singletonList("a.b")).getValue(0)).longValue());
+      assertEquals(2L, ((Number) reader.readColumn(0, "a.b").getValue(0)).longValue());
+      assertEquals("key", reader.readColumn(0, Collections.singletonList("x[]")).getValue(0));
+      List<Object> docs = new ArrayList<>();
+      for (byte[] bytes : reader.readRowGroup(0)) {
+        docs.add(decode(bytes));
+      }
+      assertEquals(expected, docs);
+    }
+    Files.delete(path);
+  }
+
+  @Test
+  void testRecordLog() throws Exception {
+    Path dir = Files.createTempDirectory("njson");
+    Path path = dir.resolve("events.log");
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      writer.setIndexInterval(16);
+      writer.setSyncBatchSize(100);
+      for (int i = 0; i < 1000; i++) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("seq", i);
+        writer.append(new Serializer().packJsonObject(map).toBytes());
+      }
+    }
+
+    try (RecordLogReader reader = new RecordLogReader(path)) {
+      Deserializer deser = new Deserializer();
+      deser.init(reader.read(500));
+      System.out.format("record 500 seq:%d\n", deser.getLong("seq"));
+      reader.seek(990);
+      byte[] record;
+      while ((record = reader.next()) != null) {
+        deser.init(record);
+        System.out.format("seq:%d,", deser.getLong("seq"));
+      }
+      System.out.println();
+    }
+  }
+
+  private static byte[] seqRecord(int seq) throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    map.put("seq", seq);
+    return new Serializer(64).packJsonObject(map).toBytes();
+  }
+
+  private static long reopen(Path path) throws Exception {
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      return writer.getRecordCount();
+    }
+  }
+
+  @Test
+  void testRecordLogRecovery() throws Exception {
+    Path path = Files.createTempDirectory("njson").resolve("torn.log");
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      writer.setIndexInterval(16);
+      for (int i = 0; i < 50; i++) {
+        writer.append(seqRecord(i));
+      }
+    }
+    long size = Files.size(path);
+
+    // zero-filled tail, negative lengths and a length past the end are torn
+    for (int len : new int[] {0, -4, -100, Integer.MIN_VALUE, 1000}) {
+      byte[] tail = new byte[16];
+      tail[0] = (byte) (len >>> 24);
+      tail[1] = (byte) (len >>> 16);
+      tail[2] = (byte) (len >>> 8);
+      tail[3] = (byte) len;
+      Files.write(path, tail, StandardOpenOption.APPEND);
+      try (RecordLogReader reader = new RecordLogReader(path)) {
+        assertTrue(reader.seek(50));
+        assertEquals(null, reader.next());
+      }
+      assertEquals(50, reopen(path));
+      assertEquals(size, Files.size(path));
+    }
+
+    // a corrupted last record reads as the end and is dropped on recovery
+    byte[] bytes = Files.readAllBytes(path);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(path, bytes);
+    try (RecordLogReader reader = new RecordLogReader(path)) {
+      assertEquals(null, reader.read(49));
+    }
+    assertEquals(49, reopen(path));
+
+    // a truncated last record too
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(path) - 1);
+    }
+    assertEquals(48, reopen(path));
+
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      for (int i = 48; i < 60; i++) {
+        writer.append(seqRecord(i));
+      }
+    }
+    Deserializer deser = new Deserializer();
+    try (RecordLogReader reader = new RecordLogReader(path)) {
+      for (int i = 0; i < 60; i++) {
+        deser.init(reader.next());
+        assertEquals(i, deser.getInt("seq"));
+      }
+      assertEquals(null, reader.next());
+    }
+
+    // corruption before the end is reported
+    bytes = Files.readAllBytes(path);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(path, bytes);
+    try (RecordLogReader reader = new RecordLogReader(path)) {
+      assertThrows(FormatException.class, () -> {
+        while (reader.next() != null) {
+          continue;
+        }
+      });
+    }
+  }
+
+  @Test
+  void testFieldIndex() throws Exception {
+    Object[] ids = {3L, 7L, 7.0, 7.5, -2.25, 1L << 53, (1L << 53) + 1, (double) (1L << 53), 1e19, Long.MAX_VALUE,
+        Long.MIN_VALUE, "seven", "", null};
+    Path dir = Files.createTempDirectory("njson");
+    Path path = dir.resolve("users.log");
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      for (int i = 0; i < 140; i++) {
+        writer.append(fieldIndexRecord(ids, i % ids.length));
+      }
+    }
+
+    FieldIndex index = FieldIndex.create(path, dir.resolve("users.log.user.id"), "user.id");
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      for (int i = 140; i < 200; i++) {
+        writer.append(fieldIndexRecord(ids, (i * 5) % ids.length));
+      }
+    }
+    assertEquals(56, index.update());
+    assertEquals(200L, index.getRecordCount());
+
+    List<Object> values = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    try (RecordLogReader reader = new RecordLogReader(path)) {
+      Deserializer deser = new Deserializer();
+      long offset = reader.getPosition();
+      byte[] record;
+      while ((record = reader.next()) != null) {
+        deser.init(record);
+        values.add(ids[(int) deser.getLong("id")]);
+        offsets.add(offset);
+        offset = reader.getPosition();
+      }
+    }
+
+    FieldIndex reopened = FieldIndex.open(path, dir.resolve("users.log.user.id"));
+    assertEquals(index.size(), reopened.size());
+    for (FieldIndex idx : new FieldIndex[] {index, reopened}) {
+      for (Object id : ids) {
+        if (id instanceof Long) {
+          assertArrayEquals(scan(values, offsets, id, id), idx.lookup((long) id));
+        } else if (id instanceof Double) {
+          assertArrayEquals(scan(values, offsets, id, id), idx.lookup((double) id));
+        } else if (id != null) {
+          assertArrayEquals(scan(values, offsets, id, id), idx.lookup((String) id));
+        }
+      }
+      assertArrayEquals(scan(values, offsets, 7.25, 7.25), idx.lookup(7.25));
+      assertArrayEquals(scan(values, offsets, 3L, 1L << 53), idx.range(3L, 1L << 53));
+      assertArrayEquals(scan(values, offsets, (1L << 53) + 1, Long.MAX_VALUE), idx.range((1L << 53) + 1, Long.MAX_VALUE));
+      assertArrayEquals(scan(values, offsets, -3.0, 7.0), idx.range(-3.0, 7.0));
+      assertArrayEquals(scan(values, offsets, Long.MIN_VALUE, Long.MAX_VALUE), idx.range(Long.MIN_VALUE, Long.MAX_VALUE));
+      assertArrayEquals(scan(values, offsets, "", "z"), idx.range("", "z"));
+    }
+  }
+
+  private static byte[] fieldIndexRecord(Object[] ids, int id) throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    if (ids[id] != null) {
+      Map<String, Object> user = new HashMap<>();
+      user.put("id", ids[id]);
+      map.put("user", user);
+    }
+    map.put("id", id);
+    return new Serializer().packJsonObject(map).toBytes();
+  }
+
+  /**
+   * Offsets of the values from from to to, inclusive, in value order, found by comparing every
+   * value exactly.
+   */
+  private static long[] scan(List<Object> values, List<Long> offsets, Object from, Object to) {
+    List<Integer> found = new ArrayList<>();
+    for (int i = 0; i < values.size(); i++) {
+      Object value = values.get(i);
+      if (value != null && value.getClass() == String.class == (from instanceof String)
+          && compareExact(from, value) <= 0 && compareExact(value, to) <= 0) {
+        found.add(i);
+      }
+    }
+    found.sort((i, j) -> {
+      int c = compareExact(values.get(i), values.get(j));
+      return c != 0 ? c : Long.compare(offsets.get(i), offsets.get(j));
+    });
+    return found.stream().mapToLong(offsets::get).toArray();
+  }
+
+  private static int compareExact(Object a, Object b) {
+    if (a instanceof String) {
+      return ((String) a).compareTo((String) b);
+    }
+    BigDecimal x = a instanceof Long ? BigDecimal.valueOf((Long) a) : new BigDecimal((Double) a);
+    BigDecimal y = b instanceof Long ? BigDecimal.valueOf((Long) b) : new BigDecimal((Double) b);
+    return x.compareTo(y);
+  }
+
+  @Test
+  void testDecodePipeline() throws Exception {
+    List<Slice> docs = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Map<String, Object> map = new HashMap<>();
+      map.put("seq", i);
+      docs.add(new Slice(new Serializer(64).packJsonObject(map).toBytes()));
+    }
+
+    List<Long> expected = new ArrayList<>();
+    for (long i = 0; i < 1000; i++) {
+      expected.add(i);
+    }
+
+    DecodePipeline<Long> pipeline = new DecodePipeline<>(deser -> deser.getLong("seq"));
+    pipeline.setCapacity(64);
+    assertEquals(expected, pipeline.decodeAll(docs));
+    assertEquals(0, pipeline.pending());
+
+    DecodePipeline<Long> unordered = new DecodePipeline<>(deser -> deser.getLong("seq"));
+    unordered.setCapacity(64);
+    unordered.setOrdered(false);
+    List<Long> seqs = unordered.decodeAll(docs);
+    Collections.sort(seqs);
+    assertEquals(expected, seqs);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      CountDownLatch release = new CountDownLatch(1);
+      DecodePipeline<Long> blocked = new DecodePipeline<>(deser -> {
+        release.await();
+        return deser.getLong("seq");
+      }, executor);
+      blocked.setCapacity(8);
+      AtomicInteger submitted = new AtomicInteger();
+      Thread producer = new Thread(() -> {
+        try {
+          for (int i = 0; i < 20; i++) {
+            blocked.submit(docs.get(i));
+            submitted.incrementAndGet();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      producer.start();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (submitted.get() < 8 || producer.getState() != Thread.State.WAITING) {
+        assertTrue(System.nanoTime() < deadline, "producer did not block");
+        Thread.sleep(1);
+      }
+      assertEquals(8, submitted.get());
+      assertEquals(8, blocked.pending());
+
+      release.countDown();
+      for (long i = 0; i < 20; i++) {
+        assertTrue(blocked.pending() <= 8);
+        assertEquals(i, (long) blocked.take());
+      }
+      producer.join();
+      assertEquals(0, blocked.pending());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testParallelPack() throws Exception {
+    List<Object> list = new ArrayList<>();
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < 100000; i++) {
+      list.add(i % 3 == 0 ? new BigDecimal(i).movePointLeft(2) : "item" + i);
+      map.put("key" + i, i % 3 == 0 ? new BigDecimal(i).movePointLeft(2) : i);
+    }
+    for (Object value : new Object[] {list, map}) {
+      for (boolean exactDecimals : new boolean[] {false, true}) {
+        Serializer ser = new Serializer(4 * 1024 * 1024);
+        ser.setExactDecimals(exactDecimals);
+        byte[] sequential = ser.packJsonObject(value).toBytes();
+        ser.init();
+        byte[] parallel = ser.packJsonObject(value, ForkJoinPool.commonPool()).toBytes();
+        assertArrayEquals(sequential, parallel);
+      }
+    }
+  }
+
+  @Test
+  void testParallelUnpack() throws Exception {
+    List<Object> list = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      list.add(Arrays.asList(i, "item" + i));
+    }
+    Map<String, Object> map = new HashMap<>();
+    map.put("list", list);
+    byte[] bytes = new Serializer(4 * 1024 * 1024).packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    List<Object> parallel = deser.getList("list", ForkJoinPool.commonPool());
+    assertEquals(list.size(), parallel.size());
+    assertEquals(deser.getObject("list"), parallel);
+
+    bytes = new Serializer(4 * 1024 * 1024).packJsonObject(list).toBytes();
+    deser.init(bytes);
+    Object sequential = deser.unpackJsonObject();
+    assertEquals(list.size(), ((List<?>) sequential).size());
+    assertEquals(sequential, deser.unpackJsonObject(ForkJoinPool.commonPool()));
+  }
+
+  @Test
+  void testSerializerPool() throws Exception {
+    SerializerPool pool = new SerializerPool();
+    for (int i = 0; i < 100; i++) {
+      Map<String, Object> map = new HashMap<>();
+      map.put("seq", i);
+      Serializer ser = pool.acquireSerializer(4096);
+      byte[] bytes = ser.packJsonObject(map).toBytes();
+      pool.release(ser);
+
+      Deserializer deser = pool.acquireDeserializer();
+      deser.init(bytes);
+      deser.getLong("seq");
+      pool.release(deser);
+    }
+    // the first acquire of each kind allocates, the rest reuse the instance kept by the thread
+    assertEquals(198L, pool.getHits());
+    assertEquals(2L, pool.getMisses());
+    assertEquals(0L, pool.getDrops());
+
+    // a second instance of a size class passes the one the thread kept on to the shared pool
+    Serializer a = pool.acquireSerializer(4096);
+    Serializer b = pool.acquireSerializer(4096);
+    assertEquals(199L, pool.getHits());
+    assertEquals(3L, pool.getMisses());
+    pool.release(a);
+    pool.release(b);
+    assertEquals(2L * 4096, pool.getPooledBytes());
+    assertTrue(pool.acquireSerializer(4096) == b);
+    assertTrue(pool.acquireSerializer(4096) == a);
+    assertEquals(201L, pool.getHits());
+    assertEquals(0L, pool.getPooledBytes());
+
+    // out of the size classes: allocated on acquire, dropped on release
+    Serializer oversized = pool.acquireSerializer((1 << 24) + 1);
+    assertEquals(4L, pool.getMisses());
+    pool.release(oversized);
+    assertEquals(1L, pool.getDrops());
+    assertTrue(pool.acquireSerializer((1 << 24) + 1) != oversized);
+    assertEquals(5L, pool.getMisses());
+    assertEquals(0L, pool.getPooledBytes());
+
+    // over the byte limit the one passed on is dropped
+    pool.release(a);
+    pool.setMaxPooledBytes(4096);
+    pool.release(b);
+    assertEquals(2L, pool.getDrops());
+    assertEquals(0L, pool.getPooledBytes());
+    assertTrue(pool.acquireSerializer(4096) == b);
+    assertTrue(pool.acquireSerializer(4096) != a);
+    assertEquals(202L, pool.getHits());
+    assertEquals(6L, pool.getMisses());
+  }
+
+  @Test
+  void testMetrics() throws Exception {
+    CountingMetrics metrics = new CountingMetrics();
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      map.put("key" + i, i);
+    }
+    Serializer ser = new Serializer(4096);
+    ser.setMetrics(metrics);
+    byte[] bytes = ser.packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.setMetrics(metrics);
+    deser.init(bytes);
+    deser.getInt("key99");
+    deser.getValuePos("missing");
+    System.out.format("written:%d read:%d lookups:%d misses:%d skipped:%d\n", metrics.getBytesWritten(),
+        metrics.getBytesRead(), metrics.getLookups(), metrics.getLookupMisses(), metrics.getValuesSkipped());
+  }
+
+  @Test
+  void testLookupDefaults() throws Exception {
+    Map<String, Object> map = new HashMap<>();
+    map.put("int", 1);
+    map.put("null", null);
+    byte[] bytes = new Serializer(256).packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    System.out.format("int:%d null:%d missing:%d\n", deser.getIntOr("int", -1), deser.getIntOr("null", -1),
+        deser.getIntOr("missing", -1));
+    ValueHolder value = new ValueHolder();
+    int status = deser.tryGetLong("int", value);
+    System.out.format("status:%d value:%d missing status:%d pos:%d\n", status, value.getLong(),
+        deser.tryGetLong("missing", value), deser.findValuePos("missing"));
+  }
+
+  @Test
+  void testKeyFilter() throws Exception {
+    Map<String, Object> user = new HashMap<>();
+    user.put("id", 7);
+    user.put("tags", Arrays.asList("a", "b"));
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put("field" + i, i);
+    }
+    map.put("user", user);
+    map.put("a", 1);
+    Serializer ser = new Serializer();
+    ser.setKeyFilter(true);
+    byte[] filtered = ser.packJsonObject(map).toBytes();
+    assertEquals(Code.SER_VERSION_KEY_FILTER, filtered[0]);
+    byte[] plain = new Serializer().packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    for (byte[] bytes : new byte[][] {filtered, plain}) {
+      deser.init(bytes);
+      assertEquals(7, deser.getInt("user.id"));
+      assertEquals(999, deser.getInt("field999"));
+      assertEquals(Deserializer.NOT_FOUND, deser.findValuePos("user.name"));
+      assertEquals(Deserializer.NOT_FOUND, deser.findValuePos("missing"));
+      assertEquals(Deserializer.NOT_FOUND, deser.findValuePos("missing.id"));
+      assertEquals(Deserializer.NOT_FOUND, deser.findValuePos("user.name.first"));
+      assertEquals(7, deser.getIntOr("missing", 7));
+      // paths running into a value that is not a map fail the same with and without the filter
+      assertThrows(FormatException.class, () -> deser.getIntOr("a.b", 7));
+      assertThrows(FormatException.class, () -> deser.findValuePos("user.id.x"));
+      assertThrows(FormatException.class, () -> deser.findValuePos("user.tags.x"));
+      assertThrows(FormatException.class, () -> deser.findValuePos("field1.x.y"));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> decode(byte[] bytes) throws Exception {
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    return (Map<String, Object>) deser.unpackJsonObject();
+  }
+
+  private static byte[] encode(Map<String, Object> map, boolean keyFilter) throws Exception {
+    Serializer ser = new Serializer(256 * 1024);
+    ser.setKeyFilter(keyFilter);
+    return ser.packJsonObject(map).toBytes();
+  }
+
+  /**
+   * Encodes map with the smallest map headers, FIXMAP or MAP16 where the body fits, unlike
+   * Serializer which always writes MAP32.
+   */
+  private static byte[] compact(Map<String, Object> map) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(Code.SER_VERSION);
+    out.write(Code.setBigEndian((byte) 0, true));
+    compactValue(new Serializer(256 * 1024), map, out);
+    return out.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void compactValue(Serializer ser, Object v, ByteArrayOutputStream out) throws Exception {
+    ser.init();
+    if (!(v instanceof Map)) {
+      out.write(ser.packValue(v).toBytes());
+      return;
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    for (Map.Entry<String, Object> e : ((Map<String, Object>) v).entrySet()) {
+      ser.init();
+      body.write(ser.packString(e.getKey()).toBytes());
+      compactValue(ser, e.getValue(), body);
+    }
+    int len = body.size();
+    if (len < 16) {
+      out.write(Code.FIXMAP_PREFIX | len);
+    } else if (len < 1 << 16) {
+      out.write(Code.MAP16);
+      out.write(len >>> 8);
+      out.write(len);
+    } else {
+      out.write(Code.MAP32);
+      out.write(ByteBuffer.allocate(4).putInt(len).array());
+    }
+    body.writeTo(out);
+  }
+
+  private static String randomString(Random random, int maxLength) {
+    char[] chars = new char[random.nextInt(maxLength + 1)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(chars);
+  }
+
+  private static Object randomValue(Random random, int depth) {
+    switch (random.nextInt(depth > 0 ? 9 : 8)) {
+      case 0:
+        return random.nextInt(100);
+      case 1:
+        return random.nextInt();
+      case 2:
+        return random.nextLong();
+      case 3:
+        return random.nextInt(1000) / 8.0;
+      case 4:
+        return randomString(random, random.nextInt(8) == 0 ? 300 : 10);
+      case 5:
+        return random.nextBoolean();
+      case 6:
+        return null;
+      case 7:
+        return Arrays.asList(random.nextInt(10), random.nextInt(1000));
+      default:
+        return randomMap(random, depth - 1);
+    }
+  }
+
+  private static Map<String, Object> randomMap(Random random, int depth) {
+    Map<String, Object> map = new HashMap<>();
+    int n = random.nextInt(6);
+    for (int i = 0; i < n; i++) {
+      map.put("k" + random.nextInt(8), randomValue(random, depth));
+    }
+    return map;
+  }
+
+  /**
+   * Adds the paths of every key below prefix, maps included.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<String> paths(Map<String, Object> map, String prefix, List<String> paths) {
+    for (Map.Entry<String, Object> e : map.entrySet()) {
+      paths.add(prefix + e.getKey());
+      if (e.getValue() instanceof Map) {
+        paths((Map<String, Object>) e.getValue(), prefix + e.getKey() + ".", paths);
+      }
+    }
+    return paths;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> parentMap(Map<String, Object> root, String path) {
+    String[] keys = path.split("\\.");
+    Map<String, Object> map = root;
+    for (int i = 0; i < keys.length - 1; i++) {
+      map = (Map<String, Object>) map.get(keys[i]);
+    }
+    return map;
+  }
+
+  private static String lastKey(String path) {
+    return path.substring(path.lastIndexOf('.') + 1);
+  }
+
+  /**
+   * Checks that a lookup finds every path of expected in the document, also through its key
+   * filter if it has one.
+   */
+  private static void assertPaths(Map<String, Object> expected, byte[] bytes) throws Exception {
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    for (String path : paths(expected, "", new ArrayList<>())) {
+      assertTrue(deser.findValuePos(path) >= 0, path);
+    }
+  }
+
+  @Test
+  void testEditor() throws Exception {
+    Random random = new Random(47);
+    for (int round = 0; round < 300; round++) {
+      Map<String, Object> doc = randomMap(random, 3);
+      byte[] bytes = round % 3 == 0 ? encode(doc, false) : round % 3 == 1 ? compact(doc) : encode(doc, true);
+      Map<String, Object> expected = decode(bytes);
+      NjsonEditor editor = new NjsonEditor(bytes);
+      for (int op = 0; op < 8; op++) {
+        List<String> paths = paths(expected, "", new ArrayList<>());
+        String path = paths.isEmpty() ? "k0" : paths.get(random.nextInt(paths.size()));
+        Object value = randomValue(random, 1);
+        switch (random.nextInt(4)) {
+          case 0:
+            editor.set(path, value);
+            parentMap(expected, path).put(lastKey(path), value);
+            break;
+          case 1: {
+            String key = "n" + random.nextInt(4);
+            path = parentMap(expected, path) == expected ? key : path.substring(0, path.lastIndexOf('.') + 1) + key;
+            editor.set(path, value);
+            parentMap(expected, path).put(key, value);
+            break;
+          }
+          case 2:
+            editor.remove(path);
+            parentMap(expected, path).remove(lastKey(path));
+            break;
+          default:
+            editor.remove(path + "x");
+            break;
+        }
+        expected = decode(encode(expected, false));
+        byte[] edited = editor.toBytes();
+        assertEquals(expected, decode(edited), "round " + round + " op " + op);
+        assertPaths(expected, edited);
+      }
+    }
+
+    // a value of the same size is overwritten in the array of the document
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("views", 1);
+    Map<String, Object> map = new HashMap<>();
+    map.put("stats", stats);
+    byte[] bytes = encode(map, false);
+    new NjsonEditor(bytes).set("stats.views", 2);
+    stats.put("views", 2);
+    assertEquals(2, ((Map<?, ?>) decode(bytes).get("stats")).get("views"));
+
+    // FIXMAP and MAP16 headers are widened when the maps outgrow them
+    bytes = compact(map);
+    // {"stats": {"views": 2}}, the inner map after the root header and the 6 byte key
+    assertTrue(Code.isFixedMap(bytes[Code.HEADER_LENGTH]));
+    assertTrue(Code.isFixedMap(bytes[Code.HEADER_LENGTH + 1 + 6]));
+    NjsonEditor editor = new NjsonEditor(bytes);
+    editor.set("stats.name", "abcdefghijklmnopqrstuvwxyz");
+    stats.put("name", "abcdefghijklmnopqrstuvwxyz");
+    assertEquals(decode(encode(map, false)), decode(editor.toBytes()));
+    map.put("s", randomString(random, 300));
+    bytes = compact(map);
+    assertEquals(Code.MAP16, bytes[Code.HEADER_LENGTH]);
+    editor = new NjsonEditor(bytes);
+    String large = randomString(new Random(1), 1 << 17);
+    editor.set("large", large);
+    map.put("large", large);
+    assertEquals(Code.MAP32, editor.toBytes()[Code.HEADER_LENGTH]);
+    assertEquals(decode(encode(map, false)), decode(editor.toBytes()));
+  }
+
+  @Test
+  void testRaw() throws Exception {
+    Map<String, Object> user = new HashMap<>();
+    user.put("id", 7);
+    user.put("name", "ann");
+    Map<String, Object> map = new HashMap<>();
+    map.put("seq", 1);
+    map.put("user", user);
+    Serializer ser = new Serializer(256);
+    byte[] bytes = ser.packJsonObject(map).toBytes();
+
+    Deserializer deser = new Deserializer();
+    deser.init(bytes);
+    Slice raw = deser.getRaw("user");
+    Map<String, Object> forward = new HashMap<>();
+    forward.put("from", "a");
+    forward.put("user", raw);
+    ser.init();
+    deser.init(ser.packJsonObject(forward).toBytes());
+    System.out.println("embedded:" + deser.unpackJsonObject());
+    ser.init();
+    deser.init(ser.packDocument(raw).toBytes());
+    System.out.println("document:" + deser.unpackJsonObject());
+  }
+
+  @Test
+  void testMerger() throws Exception {
+    Random random = new Random(49);
+    NjsonMerger merger = new NjsonMerger();
+    for (int round = 0; round < 300; round++) {
+      Slice[] documents = new Slice[1 + random.nextInt(4)];
+      List<Map<String, Object>> decoded = new ArrayList<>();
+      for (int i = 0; i < documents.length; i++) {
+        Map<String, Object> doc = randomMap(random, 2);
+        int encoding = random.nextInt(3);
+        byte[] bytes = encoding == 0 ? encode(doc, false) : encoding == 1 ? compact(doc) : encode(doc, true);
+        documents[i] = new Slice(bytes);
+        decoded.add(decode(bytes));
+      }
+
+      Map<String, Object> last = new HashMap<>();
+      Map<String, Object> first = new HashMap<>();
+      boolean conflict = false;
+      for (Map<String, Object> doc : decoded) {
+        for (Map.Entry<String, Object> e : doc.entrySet()) {
+          if (!first.containsKey(e.getKey())) {
+            first.put(e.getKey(), e.getValue());
+          } else {
+            conflict = true;
+          }
+          last.put(e.getKey(), e.getValue());
+        }
+      }
+
+      merger.setConflict(NjsonMerger.Conflict.LAST);
+      byte[] merged = merger.merge(documents);
+      assertEquals(Code.SER_VERSION, merged[0]);
+      assertEquals(last, decode(merged), "round " + round);
+      assertPaths(last, merged);
+      merger.setConflict(NjsonMerger.Conflict.FIRST);
+      assertEquals(first, decode(merger.merge(documents)), "round " + round);
+      merger.setConflict(NjsonMerger.Conflict.FAIL);
+      if (conflict) {
+        assertThrows(FormatException.class, () -> merger.merge(documents));
+      } else {
+        assertEquals(last, decode(merger.merge(documents)));
+      }
+    }
+
+    Serializer ser = new Serializer(256);
+    Slice left = new Slice(ser.packJsonObject(Arrays.asList(1, "a", null)).toBytes());
+    ser.init();
+    Slice right = new Slice(ser.packJsonObject(Arrays.asList(2.5, Collections.singletonMap("k", 1))).toBytes());
+    Deserializer deser = new Deserializer();
+    deser.init(merger.merge(left, right));
+    Object concatenated = deser.unpackJsonObject();
+    ser.init();
+    deser.init(ser.packJsonObject(Arrays.asList(1, "a", null, 2.5, Collections.singletonMap("k", 1))).toBytes());
+    assertEquals(deser.unpackJsonObject(), concatenated);
+    ser.init();
+    Slice map = new Slice(ser.packJsonObject(Collections.singletonMap("k", 1)).toBytes());
+    assertThrows(FormatException.class, () -> merger.merge(map, left));
+  }
+
+  @Test
+  void testDiff() throws Exception {
+    Random random = new Random(50);
+    NjsonDiff diff = new NjsonDiff();
+    Deserializer deser = new Deserializer();
+    for (int round = 0; round < 500; round++) {
+      Map<String, Object> from = randomMap(random, 3);
+      Map<String, Object> to = decode(encode(from, false));
+      int changes = random.nextInt(6);
+      for (int i = 0; i < changes; i++) {
+        List<String> paths = paths(to, "", new ArrayList<>());
+        if (paths.isEmpty()) {
+          break;
+        }
+        String path = paths.get(random.nextInt(paths.size()));
+        if (random.nextBoolean()) {
+          parentMap(to, path).remove(lastKey(path));
+        } else {
+          String key = random.nextBoolean() ? lastKey(path) : "n" + random.nextInt(4);
+          parentMap(to, path).put(key, randomValue(random, 1));
+        }
+      }
+      if (random.nextInt(10) == 0) {
+        to = randomMap(random, 3);
+      }
+
+      byte[] fromBytes = round % 3 == 0 ? encode(from, false) : round % 3 == 1 ? compact(from) : encode(from, true);
+      byte[] toBytes = random.nextBoolean() ? encode(to, false) : compact(to);
+      byte[] delta = diff.diff(new Slice(fromBytes), new Slice(toBytes));
+      byte[] applied = diff.apply(new Slice(fromBytes), new Slice(delta));
+      Map<String, Object> expected = decode(toBytes);
+      assertEquals(expected, decode(applied), "round " + round);
+      assertPaths(expected, applied);
+      if (changes == 0 && expected.equals(decode(fromBytes))) {
+        deser.init(delta);
+        assertEquals(Collections.emptyList(), deser.unpackJsonObject());
+      }
+    }
+
+    // a root that is not a map on either side is replaced whole
+    Serializer ser = new Serializer(256);
+    Slice map = new Slice(ser.packJsonObject(Collections.singletonMap("k", 1)).toBytes());
+    ser.init();
+    Slice list = new Slice(ser.packJsonObject(Arrays.asList(1, 2, 3)).toBytes());
+    for (Slice[] pair : new Slice[][] {{map, list}, {list, map}, {list, list}}) {
+      byte[] applied = diff.apply(pair[0], new Slice(diff.diff(pair[0], pair[1])));
+      deser.init(applied);
+      Object actual = deser.unpackJsonObject();
+      deser.init(pair[1]);
+      assertEquals(deser.unpackJsonObject(), actual);
+    }
+  }
+
   @Test
   void testSortBytesList() throws Exception {
     String[] strs = new String[]{"ab","中","a","cbce", "b", "d"};
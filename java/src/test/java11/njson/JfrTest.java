@@ -0,0 +1,57 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+public class JfrTest {
+  @Test
+  void testJfrEvents() throws Exception {
+    JfrTracer tracer = new JfrTracer();
+    Path path = Files.createTempFile("njson", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("njson.Pack").withThreshold(Duration.ZERO);
+      recording.enable("njson.Lookup").withThreshold(Duration.ZERO);
+      recording.start();
+
+      Object pack = tracer.beginPack();
+      Map<String, Object> map = new HashMap<>();
+      map.put("seq", 1);
+      byte[] bytes = new Serializer(64).packJsonObject(map).toBytes();
+      tracer.endPack(pack, bytes.length, 1);
+
+      Object lookup = tracer.beginLookup();
+      tracer.endLookup(lookup, "user.id", bytes.length, 1, 3, false);
+
+      recording.stop();
+      recording.dump(path);
+    }
+    for (RecordedEvent event : RecordingFile.readAllEvents(path)) {
+      System.out.format("%s %s\n", event.getEventType().getName(), event.getFields().size());
+    }
+    Files.delete(path);
+  }
+}
@@ -0,0 +1,147 @@
+package njson;
+
+/**
+ * Copyright 2017 njson authors
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * <p>
+ * http: *www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlowTest {
+  /**
+   * Requests everything and keeps the items and the error, if any.
+   */
+  static final class Collector<T> implements Flow.Subscriber<T> {
+    final List<T> items = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Throwable error;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(T item) {
+      items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      done.countDown();
+    }
+
+    void await() throws InterruptedException {
+      assertTrue(done.await(10, TimeUnit.SECONDS), "stream did not terminate");
+    }
+  }
+
+  private static Path writeLog(int count) throws Exception {
+    Path path = Files.createTempDirectory("njson").resolve("events.log");
+    try (RecordLogWriter writer = new RecordLogWriter(path)) {
+      for (int i = 0; i < count; i++) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("seq", i);
+        writer.append(new Serializer(64).packJsonObject(map).toBytes());
+      }
+    }
+    return path;
+  }
+
+  @Test
+  void testFromChannel() throws Exception {
+    Path path = writeLog(1000);
+    try (FileChannel channel = FileChannel.open(path)) {
+      Collector<Long> collector = new Collector<>();
+      new RecordPublisher<>(RecordPublisher.fromChannel(channel), deser -> deser.getLong("seq")).subscribe(collector);
+      collector.await();
+      assertEquals(null, collector.error);
+      assertEquals(1000, collector.items.size());
+      for (int i = 0; i < 1000; i++) {
+        assertEquals((long) i, (long) collector.items.get(i));
+      }
+    }
+
+    byte[] bytes = Files.readAllBytes(path);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(path, bytes);
+    try (FileChannel channel = FileChannel.open(path)) {
+      Collector<Slice> collector = new Collector<>();
+      RecordPublisher.ofSlices(RecordPublisher.fromChannel(channel)).subscribe(collector);
+      collector.await();
+      assertTrue(collector.error instanceof FormatException, String.valueOf(collector.error));
+    }
+  }
+
+  @Test
+  void testRecordPublisher() throws Exception {
+    Path path = writeLog(1000);
+    try (RecordLogReader reader = new RecordLogReader(path)) {
+      DecodeProcessor<Long> processor = new DecodeProcessor<>(deser -> deser.getLong("seq"));
+      RecordPublisher.ofSlices(reader::next).subscribe(processor);
+      final CountDownLatch done = new CountDownLatch(1);
+      final long[] sum = new long[1];
+      final Throwable[] error = new Throwable[1];
+      processor.subscribe(new Flow.Subscriber<Long>() {
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          this.subscription = subscription;
+          subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Long seq) {
+          sum[0] += seq;
+          subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          error[0] = throwable;
+          done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+          done.countDown();
+        }
+      });
+      assertTrue(done.await(10, TimeUnit.SECONDS), "stream did not terminate");
+      assertEquals(null, error[0]);
+      assertEquals(999L * 1000 / 2, sum[0]);
+    }
+  }
+}